@@ -0,0 +1,104 @@
+package cn.campusapp.longimagedemo;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import cn.campusapp.longimageview.IncrementalImageSource;
+
+/**
+ * Stands in for a slow download: reads an asset, then writes it to a file chunk by chunk, and
+ * notifies an {@link IncrementalImageSource} after each chunk.
+ */
+class ChunkedFileWriter extends Thread {
+    private static final String TAG = "ChunkedFileWriter";
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final long CHUNK_INTERVAL_MS = 40L;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Context mContext;
+    private final String mAssetName;
+    private final File mFile;
+    private final Listener mListener;
+    private volatile boolean mCancelled;
+
+    /**
+     * @param listener notified on main thread once the source to show is ready
+     */
+    ChunkedFileWriter(@NonNull Context context, @NonNull String assetName, @NonNull File file, @NonNull Listener listener) {
+        super(TAG);
+        mContext = context.getApplicationContext();
+        mAssetName = assetName;
+        mFile = file;
+        mListener = listener;
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        try {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                os.write(buffer, 0, read);
+            }
+            return os.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    void cancel() {
+        mCancelled = true;
+    }
+
+    @Override
+    public void run() {
+        FileOutputStream os = null;
+        try {
+            final byte[] data = readFully(mContext.getAssets().open(mAssetName));
+            // truncate a file left by a previous run before it is shown
+            os = new FileOutputStream(mFile);
+            final IncrementalImageSource source = new IncrementalImageSource(mFile, data.length);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mCancelled) {
+                        mListener.onSourceReady(source);
+                    }
+                }
+            });
+            for (int offset = 0; offset < data.length && !mCancelled; offset += CHUNK_SIZE) {
+                os.write(data, offset, Math.min(CHUNK_SIZE, data.length - offset));
+                os.flush();
+                source.notifyBytesAvailable();
+                Thread.sleep(CHUNK_INTERVAL_MS);
+            }
+            if (!mCancelled) {
+                source.notifyComplete();
+            }
+        } catch (IOException | InterruptedException e) {
+            Log.e(TAG, "run: failed", e);
+        } finally {
+            if (null != os) {
+                try {
+                    os.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    interface Listener {
+        /**
+         * Called on main thread once the file is truncated and the source can be shown
+         */
+        void onSourceReady(@NonNull IncrementalImageSource source);
+    }
+}
@@ -9,8 +9,12 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
+import cn.campusapp.longimageview.ImagePreloader;
+import cn.campusapp.longimageview.IncrementalImageSource;
 import cn.campusapp.longimageview.LongImageView;
 
 /**
@@ -18,25 +22,71 @@ import cn.campusapp.longimageview.LongImageView;
  */
 public class ImageFragment extends Fragment {
     private static final String KEY_ASSET_NAME = "assetName";
+    private static final String KEY_INCREMENTAL = "incremental";
+    private ChunkedFileWriter mWriter;
 
     public static ImageFragment newInstance(@NonNull String assetName) {
+        return newInstance(assetName, false);
+    }
+
+    /**
+     * @param incremental true to show the image while it is written to a file chunk by chunk
+     */
+    public static ImageFragment newInstance(@NonNull String assetName, boolean incremental) {
         Bundle args = new Bundle();
         args.putString(KEY_ASSET_NAME, assetName);
+        args.putBoolean(KEY_INCREMENTAL, incremental);
         ImageFragment fragment = new ImageFragment();
         fragment.setArguments(args);
         return fragment;
     }
 
+    /**
+     * Preload an asset, so that the page showing it appears with its image ready
+     */
+    public static void preload(@NonNull Context context, @NonNull String assetName, int width, int height) {
+        ImagePreloader.preload(assetName, assetSource(context, assetName), width, height, LongImageView.FIT_WIDTH);
+    }
+
+    private static ImagePreloader.Source assetSource(@NonNull Context context, @NonNull final String assetName) {
+        final Context appContext = context.getApplicationContext();
+        return new ImagePreloader.Source() {
+            @NonNull
+            @Override
+            public InputStream open() throws IOException {
+                return appContext.getAssets().open(assetName);
+            }
+        };
+    }
+
     @Nullable
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         final Context context = container.getContext();
         final LongImageView longImageView = new LongImageView(container.getContext());
-        try {
-            longImageView.setImage(context.getAssets().open(getArguments().getString(KEY_ASSET_NAME, "super_long.png")));
-        } catch (IOException e) {
-            e.printStackTrace();
+        final String assetName = getArguments().getString(KEY_ASSET_NAME, "super_long.png");
+        if (getArguments().getBoolean(KEY_INCREMENTAL, false)) {
+            final File file = new File(context.getCacheDir(), "incremental_" + assetName);
+            mWriter = new ChunkedFileWriter(context, assetName, file, new ChunkedFileWriter.Listener() {
+                @Override
+                public void onSourceReady(@NonNull IncrementalImageSource source) {
+                    longImageView.setImage(source);
+                }
+            });
+            mWriter.start();
+        } else {
+            // takes over the image if it is preloaded
+            longImageView.setImage(assetName, assetSource(context, assetName));
         }
         return longImageView;
     }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (null != mWriter) {
+            mWriter.cancel();
+            mWriter = null;
+        }
+    }
 }
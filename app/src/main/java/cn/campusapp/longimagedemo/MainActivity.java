@@ -1,11 +1,13 @@
 package cn.campusapp.longimagedemo;
 
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentStatePagerAdapter;
 import android.support.v4.view.PagerAdapter;
 import android.support.v4.view.ViewPager;
 import android.support.v7.app.AppCompatActivity;
+import android.util.DisplayMetrics;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -14,26 +16,51 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        ViewPager pager = (ViewPager) findViewById(R.id.view_pager);
+        final ViewPager pager = (ViewPager) findViewById(R.id.view_pager);
         if (null == pager) {
             return;
         }
 
+        final String[] assetImages = {"beyond_earth.jpg", "super_long.png"};
         PagerAdapter adapter = new FragmentStatePagerAdapter(getSupportFragmentManager()) {
-            private final String[] mAssetImages = {"beyond_earth.jpg", "super_long.png"};
+            private final String[] mAssetImages = assetImages;
 
             @Override
             public int getCount() {
-                return mAssetImages.length;
+                // the last page shows the long image while it is "downloading"
+                return mAssetImages.length + 1;
             }
 
             @Override
             public Fragment getItem(int position) {
+                if (position == mAssetImages.length) {
+                    return ImageFragment.newInstance("super_long.png", true);
+                }
                 return ImageFragment.newInstance(mAssetImages[position]);
             }
         };
 
+        // preload the pages created along with the first one, so their decoders are built off main
+        // thread, then the first page beyond offscreen limit whenever a page is selected
+        for (int i = 0; i <= pager.getOffscreenPageLimit(); i++) {
+            preloadPage(assetImages, i);
+        }
+        pager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+            @Override
+            public void onPageSelected(int position) {
+                preloadPage(assetImages, position + pager.getOffscreenPageLimit() + 1);
+            }
+        });
+
         pager.setAdapter(adapter);
         adapter.notifyDataSetChanged();
     }
+
+    private void preloadPage(@NonNull String[] assetImages, int position) {
+        if (position < assetImages.length) {
+            // pager fills the screen
+            final DisplayMetrics metrics = getResources().getDisplayMetrics();
+            ImageFragment.preload(this, assetImages[position], metrics.widthPixels, metrics.heightPixels);
+        }
+    }
 }
@@ -0,0 +1,65 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link DecoderBackend} backed by {@link BitmapRegionDecoder}
+ */
+class BitmapRegionDecoderBackend implements DecoderBackend {
+    static final Factory FACTORY = new Factory() {
+        @Override
+        public int getPriority(@NonNull String mimeType) {
+            switch (mimeType) {
+                case "image/jpeg":
+                case "image/png":
+                case "image/webp":
+                    return PRIORITY_NATIVE;
+                default:
+                    return PRIORITY_UNSUPPORTED;
+            }
+        }
+
+        @NonNull
+        @Override
+        public DecoderBackend create(@NonNull InputStream is, @NonNull String mimeType) throws IOException {
+            return new BitmapRegionDecoderBackend(is);
+        }
+    };
+    private final BitmapRegionDecoder mDecoder;
+
+    BitmapRegionDecoderBackend(@NonNull InputStream is) throws IOException {
+        mDecoder = BitmapRegionDecoder.newInstance(is, false);
+    }
+
+    @Override
+    public int getWidth() {
+        return mDecoder.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return mDecoder.getHeight();
+    }
+
+    @Override
+    public int getCapabilities() {
+        return CAPABILITY_REGION | CAPABILITY_REUSE_BITMAP | CAPABILITY_QUALITY_HINT;
+    }
+
+    @Override
+    public Bitmap decodeRegion(@NonNull Rect rect, @NonNull BitmapFactory.Options options) {
+        return mDecoder.decodeRegion(rect, options);
+    }
+
+    @Override
+    public void recycle() {
+        mDecoder.recycle();
+    }
+}
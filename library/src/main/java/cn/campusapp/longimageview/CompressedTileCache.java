@@ -0,0 +1,190 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.nio.ShortBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Second tier of tile cache, which keeps tiles evicted by {@link DecodeScheduler} compressed with
+ * {@link TileCodec} within a byte budget.
+ * <p/>
+ * Restoring a tile from here is a copy instead of a decode, so scrolling back to a region just left
+ * does not hit the decoder again. Only RGB_565 tiles are kept, least recently used ones are dropped
+ * first. Methods are thread safe.
+ */
+class CompressedTileCache {
+    private static final String TAG = "CompressedTileCache";
+
+    /**
+     * Buffers to copy and compress pixels with, per thread so that decode threads sharing a cache do
+     * not wait for each other
+     */
+    private static final ThreadLocal<Scratch> sScratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private final int mMaxBytes;
+    /**
+     * Guarded by this, as are {@link #mBytes} and {@link #mGeneration}
+     */
+    private final LinkedHashMap<Long, Entry> mEntries = new LinkedHashMap<>(16, 0.75F, true);
+    private int mBytes;
+    /**
+     * Increased on every invalidation, so that tiles evicted before it are not put afterwards
+     */
+    private int mGeneration;
+
+    /**
+     * @param maxBytes max bytes of compressed data to keep
+     */
+    CompressedTileCache(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    int getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Compress bitmap of given tile into cache, the tile is left untouched
+     *
+     * @param generation {@link #getGeneration()} when the tile is known to be up to date
+     */
+    void put(@NonNull Tile tile, int generation) {
+        final Bitmap bitmap = tile.bitmap;
+        if (null == bitmap || bitmap.isRecycled() || tile.isOverview() || bitmap.getConfig() != Bitmap.Config.RGB_565) {
+            return;
+        }
+        synchronized (this) {
+            if (generation != mGeneration || mEntries.containsKey(tile.key())) {
+                return;
+            }
+        }
+        // compressed without holding the lock, other threads may get tiles meanwhile
+        final int count = bitmap.getRowBytes() * bitmap.getHeight() / 2;
+        final Scratch scratch = sScratch.get();
+        scratch.ensureCapacity(count);
+        try {
+            bitmap.copyPixelsToBuffer(ShortBuffer.wrap(scratch.pixels, 0, count));
+        } catch (RuntimeException e) {
+            Log.e(TAG, "put: failed to copy " + tile, e);
+            return;
+        }
+        final int length = TileCodec.encode(scratch.pixels, count, scratch.encoded);
+        if (length > mMaxBytes) {
+            return;
+        }
+        final byte[] data = new byte[length];
+        System.arraycopy(scratch.encoded, 0, data, 0, length);
+        synchronized (this) {
+            // invalidated or put by another thread meanwhile
+            if (generation != mGeneration || mEntries.containsKey(tile.key())) {
+                return;
+            }
+            mEntries.put(tile.key(), new Entry(data, bitmap.getWidth(), bitmap.getHeight(), tile.bottom));
+            mBytes += length;
+            trimToSize();
+        }
+    }
+
+    /**
+     * Restore bitmap of given tile
+     *
+     * @return a new bitmap, or null if the tile is not cached
+     */
+    @Nullable
+    Bitmap get(@NonNull Tile tile) {
+        final Entry entry;
+        synchronized (this) {
+            entry = mEntries.get(tile.key());
+        }
+        if (null == entry) {
+            return null;
+        }
+        // data of an entry never changes, so it is decoded without holding the lock
+        final Bitmap bitmap;
+        try {
+            bitmap = Bitmap.createBitmap(entry.width, entry.height, Bitmap.Config.RGB_565);
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, "get: failed to allocate " + tile, e);
+            return null;
+        }
+        final int count = bitmap.getRowBytes() * bitmap.getHeight() / 2;
+        final Scratch scratch = sScratch.get();
+        scratch.ensureCapacity(count);
+        TileCodec.decode(entry.data, entry.data.length, scratch.pixels);
+        bitmap.copyPixelsFromBuffer(ShortBuffer.wrap(scratch.pixels, 0, count));
+        return bitmap;
+    }
+
+    /**
+     * Drop tiles whose bottom is below given row, e.g. when more of the image becomes available
+     */
+    synchronized void invalidateRows(int top) {
+        mGeneration++;
+        final Iterator<Entry> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            if (entry.bottom > top) {
+                iterator.remove();
+                mBytes -= entry.data.length;
+            }
+        }
+    }
+
+    synchronized void clear() {
+        mGeneration++;
+        mEntries.clear();
+        mBytes = 0;
+    }
+
+    synchronized int size() {
+        return mBytes;
+    }
+
+    private void trimToSize() {
+        final Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mBytes > mMaxBytes && iterator.hasNext()) {
+            mBytes -= iterator.next().data.length;
+            iterator.remove();
+        }
+    }
+
+    private static class Scratch {
+        short[] pixels = new short[0];
+        byte[] encoded = new byte[0];
+
+        void ensureCapacity(int count) {
+            if (pixels.length < count) {
+                pixels = new short[count];
+                encoded = new byte[TileCodec.maxEncodedSize(count)];
+            }
+        }
+    }
+
+    private static class Entry {
+        final byte[] data;
+        final int width;
+        final int height;
+        final int bottom;
+
+        Entry(byte[] data, int width, int height, int bottom) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.bottom = bottom;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package cn.campusapp.longimageview;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor for decode work of {@link LongImageView}, which limits how many decodes run at the same
+ * time and at which thread priority.
+ * <p/>
+ * It can wrap an executor of the app, so that decoding shares the app's threads instead of starting
+ * new ones, and one instance can be shared by several views to keep all their decodes within a
+ * predictable CPU budget. See {@link #setDefault(Executor)} and {@link LongImageView#setDecodeExecutor(Executor)}.
+ * <p/>
+ * Tile decodes, overview decodes, compression of evicted tiles and refreshes of growing images all
+ * run here, and the concurrency limit applies across all of them and all views sharing the executor.
+ * While any of those views adapts quality to device state, the limit is lowered further when the
+ * device is under pressure, see {@link LongImageView#setAdaptiveQualityEnabled(boolean)}.
+ */
+public class DecodeExecutor implements Executor {
+    /**
+     * Run tasks with priority of the thread they are executed on
+     */
+    public static final int KEEP_THREAD_PRIORITY = Integer.MIN_VALUE;
+    private static final String TAG = "DecodeExecutor";
+    private static Executor sDefault;
+
+    private final Executor mDelegate;
+    private final int mMaxConcurrency;
+    private final int mThreadPriority;
+    /**
+     * Tasks waiting for a free slot, also guards {@link #mRunning}
+     */
+    private final ArrayDeque<Runnable> mPending = new ArrayDeque<>();
+    private int mRunning;
+    /**
+     * Controller of views decoding here which adapt quality, and the number of them, guarded by {@link #mPending}
+     */
+    private QualityController mQualityController;
+    private int mQualityUsers;
+
+    /**
+     * @param delegate       executor which runs tasks, e.g. a thread pool of the app
+     * @param maxConcurrency max number of tasks submitted to delegate at the same time
+     */
+    public DecodeExecutor(@NonNull Executor delegate, int maxConcurrency) {
+        this(delegate, maxConcurrency, KEEP_THREAD_PRIORITY);
+    }
+
+    /**
+     * @param delegate       executor which runs tasks, e.g. a thread pool of the app
+     * @param maxConcurrency max number of tasks submitted to delegate at the same time
+     * @param threadPriority priority as in {@link Process#setThreadPriority(int)} while running a task,
+     *                       restored afterwards, or {@link #KEEP_THREAD_PRIORITY}
+     */
+    public DecodeExecutor(@NonNull Executor delegate, int maxConcurrency, int threadPriority) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        mDelegate = delegate;
+        mMaxConcurrency = maxConcurrency;
+        mThreadPriority = threadPriority;
+    }
+
+    /**
+     * Create an executor with its own threads
+     *
+     * @param threads        number of threads, which is also the concurrency limit
+     * @param threadPriority priority of threads as in {@link Process#setThreadPriority(int)}
+     */
+    public static DecodeExecutor newPool(int threads, final int threadPriority) {
+        final AtomicInteger count = new AtomicInteger();
+        final Executor pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(threadPriority);
+                        r.run();
+                    }
+                }, "LongImageView-decode-" + count.incrementAndGet());
+            }
+        });
+        // priority is set once per thread
+        return new DecodeExecutor(pool, threads, KEEP_THREAD_PRIORITY);
+    }
+
+    /**
+     * Set the executor used by views without their own executor, takes effect on images set afterwards
+     *
+     * @param executor executor for decodes, or null to use a single background thread (default)
+     */
+    public static synchronized void setDefault(@Nullable Executor executor) {
+        sDefault = executor;
+    }
+
+    @NonNull
+    public static synchronized Executor getDefault() {
+        if (null == sDefault) {
+            sDefault = newPool(1, Process.THREAD_PRIORITY_BACKGROUND);
+        }
+        return sDefault;
+    }
+
+    public int getMaxConcurrency() {
+        return mMaxConcurrency;
+    }
+
+    /**
+     * Lower concurrency according to given controller, until each call is paired with
+     * {@link #removeQualityController()}
+     */
+    void addQualityController(@NonNull QualityController controller) {
+        synchronized (mPending) {
+            mQualityController = controller;
+            mQualityUsers++;
+        }
+    }
+
+    void removeQualityController() {
+        final ArrayList<Runnable> ready = new ArrayList<>();
+        synchronized (mPending) {
+            if (mQualityUsers > 0 && 0 == --mQualityUsers) {
+                mQualityController = null;
+                // the limit may be raised, let waiting tasks use the freed slots
+                while (mRunning < mMaxConcurrency && !mPending.isEmpty()) {
+                    mRunning++;
+                    ready.add(mPending.poll());
+                }
+            }
+        }
+        for (Runnable command : ready) {
+            submit(command);
+        }
+    }
+
+    /**
+     * @return concurrency limit now, must hold lock of {@link #mPending}
+     */
+    private int getConcurrencyLimit() {
+        return null == mQualityController ? mMaxConcurrency : mQualityController.limitConcurrency(mMaxConcurrency);
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        synchronized (mPending) {
+            if (mRunning >= getConcurrencyLimit()) {
+                mPending.add(command);
+                return;
+            }
+            mRunning++;
+        }
+        submit(command);
+    }
+
+    private void submit(@NonNull final Runnable command) {
+        try {
+            mDelegate.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runWithPriority(command);
+                    } finally {
+                        onTaskFinished();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            onTaskFinished();
+            throw e;
+        }
+    }
+
+    private void runWithPriority(@NonNull Runnable command) {
+        if (mThreadPriority == KEEP_THREAD_PRIORITY) {
+            command.run();
+            return;
+        }
+        final int tid = Process.myTid();
+        int savedPriority = KEEP_THREAD_PRIORITY;
+        try {
+            savedPriority = Process.getThreadPriority(tid);
+            Process.setThreadPriority(mThreadPriority);
+        } catch (Throwable t) {
+            Log.e(TAG, "runWithPriority: failed to set priority " + mThreadPriority, t);
+        }
+        try {
+            command.run();
+        } finally {
+            if (savedPriority != KEEP_THREAD_PRIORITY && savedPriority != mThreadPriority) {
+                try {
+                    Process.setThreadPriority(savedPriority);
+                } catch (Throwable t) {
+                    Log.e(TAG, "runWithPriority: failed to restore priority " + savedPriority, t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hand the slot of a finished task to the next pending one, or give it up if the limit is lowered
+     */
+    private void onTaskFinished() {
+        final Runnable next;
+        synchronized (mPending) {
+            next = mRunning > getConcurrencyLimit() ? null : mPending.poll();
+            if (null == next) {
+                mRunning--;
+                return;
+            }
+        }
+        submit(next);
+    }
+}
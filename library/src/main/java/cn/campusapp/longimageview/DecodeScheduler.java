@@ -0,0 +1,755 @@
+package cn.campusapp.longimageview;
+
+import android.annotation.TargetApi;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * DecodeScheduler paces tile decoding with display frames.
+ * <p/>
+ * Tiles are decoded one by one on a background executor, while publishing decoded tiles and deciding
+ * what to decode next only happen in {@link Choreographer} frame callbacks, so drawing never waits
+ * for a decode and the main thread spends a bounded part of each frame on tile bookkeeping.
+ * <p/>
+ * Tiles are decoded in the order of {@link TileWorkQueue}, whose focus follows current region on every
+ * {@link #onRegionChanged()}, and speculative decoding is stopped while a fling is in flight.
+ * <p/>
+ * While zooming, tiles already decoded keep being drawn, scaled by canvas matrix, and tiles are only
+ * scheduled again when the sample size crosses a power of 2 or the zoom settles.
+ * <p/>
+ * Optionally, the whole image is decoded once at a large sample size as an overview, which is drawn
+ * beneath all tiles. While scrubbing, only the overview is drawn for newly reached regions, and tiles
+ * are scheduled once scrubbing ends.
+ * <p/>
+ * With a {@link QualityController}, prefetch, decode quality, sample size and decode rate follow the
+ * pressure the device is under.
+ * <p/>
+ * With a {@link CompressedTileCache}, evicted tiles are compressed in background and restored from
+ * it instead of being decoded again.
+ * <p/>
+ * All methods except {@link #requestFrame()} must be called on main thread.
+ */
+class DecodeScheduler implements Choreographer.FrameCallback {
+    private static final String TAG = "DecodeScheduler";
+    /**
+     * Part of a frame which may be spent on publishing decoded tiles
+     */
+    private static final float PUBLISH_BUDGET_RATIO = 0.25F;
+    /**
+     * Speculative decode area around visible region, in multiples of visible region size
+     */
+    private static final float PREFETCH_RATIO = 0.5F;
+    private static final float DEFAULT_REFRESH_RATE = 60F;
+    /**
+     * Time before a tile which failed to decode is tried again
+     */
+    private static final long FAILED_RETRY_NANOS = 2000000000L;
+    private static final Comparator<Tile> COARSE_FIRST = new Comparator<Tile>() {
+        @Override
+        public int compare(Tile lhs, Tile rhs) {
+            return rhs.sampleSize - lhs.sampleSize;
+        }
+    };
+    private final RegionDecoder mRegionDecoder;
+    private Callback mCallback;
+    private volatile Executor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Choreographer mChoreographer;
+    private long mFrameIntervalNanos;
+    /**
+     * Published tiles, touched on main thread only
+     */
+    private final HashMap<Long, Tile> mTiles = new HashMap<>();
+    /**
+     * Published tiles in drawing order, coarse tiles first so that finer ones are drawn on top
+     */
+    private final ArrayList<Tile> mDrawOrder = new ArrayList<>();
+    /**
+     * Tiles waiting to be decoded, also guards {@link #mInFlight} and {@link #mWorking}
+     */
+    private final TileWorkQueue mQueue = new TileWorkQueue();
+    /**
+     * Keys of tiles which are being decoded or decoded but not published yet, guarded by {@link #mQueue}
+     */
+    private final Set<Long> mInFlight = new HashSet<>();
+    private final ConcurrentLinkedQueue<Tile> mDecoded = new ConcurrentLinkedQueue<>();
+    /**
+     * Keys of tiles which failed to decode and the time they may be tried again, touched on main thread only
+     */
+    private final HashMap<Long, Long> mFailed = new HashMap<>();
+    private final AtomicBoolean mFrameScheduled = new AtomicBoolean();
+    private final ArrayList<Tile> mWanted = new ArrayList<>();
+    private final ArrayList<Tile> mSpeculative = new ArrayList<>();
+    private final Rect mVisibleRect = new Rect();
+    private final Rect mPrefetchRect = new Rect();
+    private final Rect mTileRect = new Rect();
+    /**
+     * Whether {@link #mDecodeTask} is submitted to {@link #mExecutor}, guarded by {@link #mQueue}
+     */
+    private boolean mWorking;
+    private boolean mFlinging;
+    private boolean mZooming;
+    private boolean mScrubbing;
+    private boolean mOverviewEnabled;
+    /**
+     * Whether overview is being decoded, guarded by {@link #mQueue}
+     */
+    private boolean mOverviewRequested;
+    /**
+     * Published overview, touched on main thread only
+     */
+    private Tile mOverview;
+    /**
+     * Sample size tiles are scheduled for since zooming starts
+     */
+    private int mZoomSampleSize;
+    private boolean mDrawOrderChanged;
+    /**
+     * Union of bounds of tiles published since last {@link #consumeDirtyRect(Rect)}, in image coordinates
+     */
+    private final Rect mDirtyRect = new Rect();
+    private volatile boolean mClosed;
+    /**
+     * Null for full quality all the time
+     */
+    private volatile QualityController mQuality;
+    /**
+     * Null to drop evicted tiles
+     */
+    private volatile CompressedTileCache mTileCache;
+
+    private final Runnable mDecodeTask = new Runnable() {
+        @Override
+        public void run() {
+            final Tile tile;
+            synchronized (mQueue) {
+                tile = mClosed ? null : mQueue.poll();
+                if (null == tile) {
+                    mWorking = false;
+                    return;
+                }
+                mInFlight.add(tile.key());
+            }
+
+            final QualityController quality = mQuality;
+            final CompressedTileCache cache = mTileCache;
+            tile.bitmap = null == cache ? null : cache.get(tile);
+            if (null == tile.bitmap) {
+                final long start = System.nanoTime();
+                tile.bitmap = mRegionDecoder.decodeTile(tile, null == quality || quality.isQualityPreferred());
+                if (null != quality) {
+                    quality.onTileDecoded(System.nanoTime() - start, (long) tile.width() * tile.height());
+                }
+            }
+            if (mClosed) {
+                tile.recycle();
+            } else {
+                mDecoded.add(tile);
+                requestFrame();
+            }
+
+            // one tile per task, so that decoding does not monopolize a shared executor
+            synchronized (mQueue) {
+                // when throttled, decoding resumes on next frame
+                if (mClosed || mQueue.isEmpty() || (null != quality && quality.isThrottled())) {
+                    mWorking = false;
+                    return;
+                }
+            }
+            if (!execute(this)) {
+                synchronized (mQueue) {
+                    mWorking = false;
+                }
+            }
+        }
+    };
+
+    private final Runnable mOverviewTask = new Runnable() {
+        @Override
+        public void run() {
+            final Tile tile = mRegionDecoder.createOverviewTile();
+            tile.bitmap = mClosed ? null : mRegionDecoder.decodeTile(tile);
+            synchronized (mQueue) {
+                mOverviewRequested = false;
+            }
+            if (mClosed) {
+                tile.recycle();
+            } else if (null != tile.bitmap) {
+                mDecoded.add(tile);
+                requestFrame();
+            }
+        }
+    };
+
+    private final Runnable mFallbackFrame = new Runnable() {
+        @Override
+        public void run() {
+            doFrame(nanoTime());
+        }
+    };
+
+    private final Runnable mRetryFailed = new Runnable() {
+        @Override
+        public void run() {
+            requestFrame();
+        }
+    };
+
+    DecodeScheduler(@NonNull RegionDecoder regionDecoder, @NonNull Callback callback, float refreshRate) {
+        this(regionDecoder, callback, refreshRate, DecodeExecutor.getDefault());
+    }
+
+    DecodeScheduler(@NonNull RegionDecoder regionDecoder, @NonNull Callback callback, float refreshRate, @NonNull Executor executor) {
+        mRegionDecoder = regionDecoder;
+        mCallback = callback;
+        mExecutor = executor;
+        mChoreographer = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? getChoreographer() : null;
+        setRefreshRate(refreshRate);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static Choreographer getChoreographer() {
+        return Choreographer.getInstance();
+    }
+
+    /**
+     * Adapt decoding to pressure reported by given controller
+     *
+     * @param quality controller, or null to always decode at full quality
+     */
+    void setQualityController(QualityController quality) {
+        mQuality = quality;
+        requestFrame();
+    }
+
+    /**
+     * Keep evicted tiles compressed in given cache
+     *
+     * @param cache cache, or null to drop evicted tiles
+     */
+    void setTileCache(CompressedTileCache cache) {
+        final CompressedTileCache last = mTileCache;
+        mTileCache = cache;
+        if (null != last && last != cache) {
+            last.clear();
+        }
+    }
+
+    /**
+     * Change the callback, e.g. when a view takes over a preloaded image
+     */
+    void setCallback(@NonNull Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Set refresh rate of the display, which the publish budget of each frame follows
+     *
+     * @param refreshRate frames per second, or 0 if unknown
+     */
+    void setRefreshRate(float refreshRate) {
+        mFrameIntervalNanos = (long) (1000000000L / (refreshRate > 0 ? refreshRate : DEFAULT_REFRESH_RATE));
+    }
+
+    /**
+     * Change the executor decodes are submitted to, a decode in progress finishes on the old one
+     */
+    void setExecutor(@NonNull Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Notify that current region of {@link RegionDecoder} has changed, queued tiles are reprioritized
+     * immediately and tiles will be rescheduled on next frame
+     */
+    void onRegionChanged() {
+        final Rect region = mRegionDecoder.getRegion();
+        mQueue.setFocus(region.centerX(), region.centerY());
+        requestFrame();
+    }
+
+    /**
+     * Set whether a fling is in flight, speculative decoding is stopped during fling
+     *
+     * @param flinging true if a fling is in flight
+     */
+    void setFlinging(boolean flinging) {
+        if (mFlinging != flinging) {
+            mFlinging = flinging;
+            requestFrame();
+        }
+    }
+
+    /**
+     * Set whether a zoom gesture or animation is in progress, tiles are not rescheduled during zooming
+     * unless sample size changes
+     *
+     * @param zooming true if zooming
+     */
+    void setZooming(boolean zooming) {
+        if (mZooming != zooming) {
+            mZooming = zooming;
+            mZoomSampleSize = getSampleSize();
+            requestFrame();
+        }
+    }
+
+    /**
+     * Set whether fast scroll scrubbing is in progress, no tile is scheduled during scrubbing
+     *
+     * @param scrubbing true if scrubbing
+     */
+    void setScrubbing(boolean scrubbing) {
+        if (mScrubbing != scrubbing) {
+            mScrubbing = scrubbing;
+            requestFrame();
+        }
+    }
+
+    /**
+     * Set whether to decode an overview of the whole image
+     *
+     * @param enabled true to decode overview
+     */
+    void setOverviewEnabled(boolean enabled) {
+        mOverviewEnabled = enabled;
+        if (enabled && null == mOverview) {
+            requestOverview();
+        }
+    }
+
+    /**
+     * @return published overview, or null if not decoded yet
+     */
+    Tile getOverview() {
+        return mOverview;
+    }
+
+    /**
+     * Decode overview again, e.g. when the image data is completed
+     */
+    void invalidateOverview() {
+        if (null != mOverview) {
+            mOverview.stale = true;
+        }
+        if (mOverviewEnabled) {
+            requestOverview();
+        }
+    }
+
+    private void requestOverview() {
+        synchronized (mQueue) {
+            if (mClosed || mOverviewRequested) {
+                return;
+            }
+            mOverviewRequested = true;
+        }
+        if (!execute(mOverviewTask)) {
+            synchronized (mQueue) {
+                mOverviewRequested = false;
+            }
+        }
+    }
+
+    /**
+     * Mark published tiles below given row as stale, they are kept drawing until decoded again.
+     * Tiles which failed to decode are tried again right away.
+     *
+     * @param top tiles whose bottom is below this row are decoded again
+     */
+    void invalidateRows(int top) {
+        mFailed.clear();
+        for (Tile tile : mTiles.values()) {
+            if (tile.bottom > top) {
+                tile.stale = true;
+            }
+        }
+        final CompressedTileCache cache = mTileCache;
+        if (null != cache) {
+            cache.invalidateRows(top);
+        }
+        requestFrame();
+    }
+
+    /**
+     * Run given task on decode executor
+     */
+    void runInBackground(@NonNull Runnable task) {
+        execute(task);
+    }
+
+    /**
+     * Submit given task to decode executor
+     *
+     * @return false if the executor rejects it, e.g. a pool of the app which is shut down
+     */
+    private boolean execute(@NonNull Runnable task) {
+        try {
+            mExecutor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "execute: rejected by " + mExecutor, e);
+            return false;
+        }
+    }
+
+    /**
+     * Request a frame callback, may be called on any thread
+     */
+    void requestFrame() {
+        if (mClosed || !mFrameScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        if (null != mChoreographer) {
+            postFrameCallback();
+        } else {
+            mMainHandler.post(mFallbackFrame);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        mChoreographer.postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFrameScheduled.set(false);
+        if (mClosed) {
+            return;
+        }
+        final boolean published = publishDecoded(frameTimeNanos);
+        final int sampleSize = getSampleSize();
+        // while scrubbing, overview is drawn and tiles are scheduled when scrubbing ends
+        if (mScrubbing) {
+            mQueue.clear();
+        } else if (!mZooming) {
+            scheduleTiles(sampleSize);
+        } else if (sampleSize != mZoomSampleSize) {
+            // crossed a power of 2, start decoding the new level
+            mZoomSampleSize = sampleSize;
+            scheduleTiles(sampleSize);
+        }
+        if (published) {
+            mCallback.onTilesPublished();
+        }
+        if (!mDecoded.isEmpty()) {
+            // out of budget, publish the rest on next frame
+            requestFrame();
+        }
+    }
+
+    /**
+     * Retrieve and reset the area which looks different since last call because of newly published tiles
+     *
+     * @param outRect receives dirty area in image coordinates, empty if nothing changed
+     * @return true if anything changed
+     */
+    boolean consumeDirtyRect(Rect outRect) {
+        outRect.set(mDirtyRect);
+        mDirtyRect.setEmpty();
+        return !outRect.isEmpty();
+    }
+
+    /**
+     * Draw published tiles, coarse tiles are drawn first as placeholders of finer ones
+     *
+     * @param canvas canvas which is already transformed to image coordinates
+     * @param region region to draw in image coordinates
+     * @param paint  paint to draw with
+     */
+    void drawTiles(@NonNull Canvas canvas, @NonNull Rect region, Paint paint) {
+        if (mDrawOrderChanged) {
+            mDrawOrder.clear();
+            mDrawOrder.addAll(mTiles.values());
+            Collections.sort(mDrawOrder, COARSE_FIRST);
+            mDrawOrderChanged = false;
+        }
+        final Tile overview = mOverview;
+        if (null != overview && null != overview.bitmap) {
+            mTileRect.set(overview.left, overview.top, overview.right, overview.bottom);
+            canvas.drawBitmap(overview.bitmap, null, mTileRect, paint);
+        }
+        for (int i = 0, size = mDrawOrder.size(); i < size; i++) {
+            final Tile tile = mDrawOrder.get(i);
+            if (null != tile.bitmap && tile.intersects(region.left, region.top, region.right, region.bottom)) {
+                mTileRect.set(tile.left, tile.top, tile.right, tile.bottom);
+                canvas.drawBitmap(tile.bitmap, null, mTileRect, paint);
+            }
+        }
+    }
+
+    /**
+     * Stop decoding and recycle all tiles
+     */
+    void close() {
+        mClosed = true;
+        synchronized (mQueue) {
+            mQueue.clear();
+        }
+        mMainHandler.removeCallbacks(mFallbackFrame);
+        mMainHandler.removeCallbacks(mRetryFailed);
+        mFailed.clear();
+        if (null != mChoreographer) {
+            removeFrameCallback();
+        }
+        Tile tile;
+        while (null != (tile = mDecoded.poll())) {
+            tile.recycle();
+        }
+        for (Tile published : mTiles.values()) {
+            published.recycle();
+        }
+        mTiles.clear();
+        mDrawOrder.clear();
+        if (null != mOverview) {
+            mOverview.recycle();
+            mOverview = null;
+        }
+        final CompressedTileCache cache = mTileCache;
+        if (null != cache) {
+            cache.clear();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void removeFrameCallback() {
+        mChoreographer.removeFrameCallback(this);
+    }
+
+    /**
+     * @return current time in the time base of {@link #doFrame(long)}
+     */
+    @VisibleForTesting
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @VisibleForTesting
+    Collection<Tile> getPublishedTiles() {
+        return Collections.unmodifiableCollection(mTiles.values());
+    }
+
+    /**
+     * Sample size to decode current region at, raised under pressure
+     */
+    private int getSampleSize() {
+        final int sampleSize = mRegionDecoder.getSampleSize();
+        final QualityController quality = mQuality;
+        return null == quality ? sampleSize : quality.getSampleSize(sampleSize);
+    }
+
+    /**
+     * Move decoded tiles to {@link #mTiles} within the publish budget of current frame
+     *
+     * @param frameTimeNanos start time of current frame
+     * @return true if any tile is published
+     */
+    private boolean publishDecoded(long frameTimeNanos) {
+        final long deadline = frameTimeNanos + (long) (mFrameIntervalNanos * PUBLISH_BUDGET_RATIO);
+        boolean published = false;
+        Tile tile;
+        while (null != (tile = mDecoded.poll())) {
+            if (tile.isOverview()) {
+                if (null != mOverview) {
+                    mOverview.recycle();
+                }
+                mOverview = tile;
+                mDirtyRect.union(tile.left, tile.top, tile.right, tile.bottom);
+                published = true;
+                continue;
+            }
+            synchronized (mQueue) {
+                mInFlight.remove(tile.key());
+            }
+            if (null != tile.bitmap) {
+                final Tile replaced = mTiles.put(tile.key(), tile);
+                if (null != replaced) {
+                    replaced.recycle();
+                }
+                mDirtyRect.union(tile.left, tile.top, tile.right, tile.bottom);
+                published = true;
+            } else {
+                onTileFailed(tile);
+            }
+            if (nanoTime() > deadline) {
+                break;
+            }
+        }
+        if (published) {
+            mDrawOrderChanged = true;
+        }
+        return published;
+    }
+
+    /**
+     * Keep a tile which failed to decode, e.g. of a corrupt part of image, from being queued again on
+     * every frame
+     */
+    private void onTileFailed(@NonNull Tile tile) {
+        mFailed.put(tile.key(), nanoTime() + FAILED_RETRY_NANOS);
+        // tiles which failed earlier are due by then as well
+        mMainHandler.removeCallbacks(mRetryFailed);
+        mMainHandler.postDelayed(mRetryFailed, FAILED_RETRY_NANOS / 1000000L);
+    }
+
+    /**
+     * @return whether tile of given key failed to decode recently
+     */
+    private boolean isFailed(long key) {
+        final Long retryAt = mFailed.get(key);
+        if (null == retryAt) {
+            return false;
+        }
+        if (nanoTime() < retryAt) {
+            return true;
+        }
+        mFailed.remove(key);
+        return false;
+    }
+
+    /**
+     * Evict tiles which are no longer needed and queue missing tiles of given sample size
+     *
+     * @param sampleSize sample size to decode tiles with
+     */
+    private void scheduleTiles(int sampleSize) {
+        final RegionDecoder regionDecoder = mRegionDecoder;
+        regionDecoder.saveCurrentRegion(mVisibleRect);
+        mQueue.setFocus(mVisibleRect.centerX(), mVisibleRect.centerY());
+        mPrefetchRect.set(mVisibleRect);
+        final QualityController quality = mQuality;
+        final float prefetchRatio = null == quality ? PREFETCH_RATIO : quality.getPrefetchRatio(PREFETCH_RATIO);
+        mPrefetchRect.inset(-(int) (mVisibleRect.width() * prefetchRatio), -(int) (mVisibleRect.height() * prefetchRatio));
+
+        mWanted.clear();
+        mSpeculative.clear();
+        regionDecoder.collectTiles(sampleSize, mVisibleRect, mWanted);
+        final int visibleCount = mWanted.size();
+        boolean visibleComplete = true;
+        for (int i = 0; i < visibleCount; i++) {
+            if (!mTiles.containsKey(mWanted.get(i).key())) {
+                visibleComplete = false;
+                break;
+            }
+        }
+        if (!mFlinging) {
+            regionDecoder.collectTiles(sampleSize, mPrefetchRect, mSpeculative);
+            for (Tile tile : mSpeculative) {
+                if (!tile.intersects(mVisibleRect.left, mVisibleRect.top, mVisibleRect.right, mVisibleRect.bottom)) {
+                    tile.speculative = true;
+                    mWanted.add(tile);
+                }
+            }
+        }
+
+        evict(sampleSize, visibleComplete);
+
+        synchronized (mQueue) {
+            mQueue.clear();
+            for (Tile tile : mWanted) {
+                final long key = tile.key();
+                final Tile published = mTiles.get(key);
+                if ((null == published || published.stale) && !mInFlight.contains(key) && !isFailed(key)) {
+                    mQueue.add(tile);
+                }
+            }
+            if (!mWorking && !mQueue.isEmpty()) {
+                mWorking = true;
+                if (!execute(mDecodeTask)) {
+                    // tried again on next schedule
+                    mWorking = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Recycle tiles outside prefetch region, and tiles of other sample sizes once visible region is
+     * fully covered by tiles of current sample size
+     */
+    private void evict(int sampleSize, boolean visibleComplete) {
+        final CompressedTileCache cache = mTileCache;
+        ArrayList<Tile> compress = null;
+        boolean evicted = false;
+        final Iterator<Tile> iterator = mTiles.values().iterator();
+        while (iterator.hasNext()) {
+            final Tile tile = iterator.next();
+            final boolean keep;
+            if (tile.sampleSize == sampleSize) {
+                keep = tile.intersects(mPrefetchRect.left, mPrefetchRect.top, mPrefetchRect.right, mPrefetchRect.bottom);
+            } else {
+                keep = !visibleComplete && tile.intersects(mVisibleRect.left, mVisibleRect.top, mVisibleRect.right, mVisibleRect.bottom);
+            }
+            if (!keep) {
+                iterator.remove();
+                if (null != cache && !tile.stale && null != tile.bitmap) {
+                    if (null == compress) {
+                        compress = new ArrayList<>();
+                    }
+                    compress.add(tile);
+                } else {
+                    tile.recycle();
+                }
+                evicted = true;
+            }
+        }
+        if (evicted) {
+            mDrawOrderChanged = true;
+        }
+        if (null != compress) {
+            compressInBackground(cache, compress);
+        }
+    }
+
+    /**
+     * Put evicted tiles into given cache and recycle them, off main thread
+     */
+    private void compressInBackground(@NonNull final CompressedTileCache cache, @NonNull final ArrayList<Tile> tiles) {
+        final int generation = cache.getGeneration();
+        final boolean submitted = execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Tile tile : tiles) {
+                    if (!mClosed) {
+                        cache.put(tile, generation);
+                    }
+                    tile.recycle();
+                }
+            }
+        });
+        if (!submitted) {
+            for (Tile tile : tiles) {
+                tile.recycle();
+            }
+        }
+    }
+
+    interface Callback {
+        /**
+         * Called on main thread when new tiles are ready to draw
+         */
+        void onTilesPublished();
+    }
+}
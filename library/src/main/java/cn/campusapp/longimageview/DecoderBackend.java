@@ -0,0 +1,95 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * DecoderBackend does the actual decoding work for {@link LongImageView}.
+ * <p/>
+ * Keeping decoding behind this interface lets the view run against synthetic images, e.g. in JVM
+ * tests, and lets apps plug in decoders for formats or code paths the built-in ones do not cover,
+ * see {@link DecoderRegistry}.
+ */
+public interface DecoderBackend {
+    /**
+     * Regions are decoded from source at full resolution, without keeping the whole image in memory
+     */
+    int CAPABILITY_REGION = 1;
+    /**
+     * {@link BitmapFactory.Options#inBitmap} is honoured
+     */
+    int CAPABILITY_REUSE_BITMAP = 1 << 1;
+    /**
+     * {@link BitmapFactory.Options#inPreferQualityOverSpeed} makes a difference
+     */
+    int CAPABILITY_QUALITY_HINT = 1 << 2;
+
+    /**
+     * @return image width in pixels
+     */
+    int getWidth();
+
+    /**
+     * @return image height in pixels
+     */
+    int getHeight();
+
+    /**
+     * @return {@code CAPABILITY_*} flags of this backend
+     */
+    int getCapabilities();
+
+    /**
+     * Decode given region of image, may be called on any thread
+     *
+     * @param rect    region in image coordinates
+     * @param options decode options, same as those of {@link android.graphics.BitmapRegionDecoder},
+     *                {@link BitmapFactory.Options#inSampleSize} is always a power of 2
+     * @return decoded bitmap, or null if failed
+     */
+    Bitmap decodeRegion(@NonNull Rect rect, @NonNull BitmapFactory.Options options);
+
+    /**
+     * Release resources, {@link #decodeRegion(Rect, BitmapFactory.Options)} must not be called afterwards
+     */
+    void recycle();
+
+    /**
+     * Creates backends for the formats it supports, see {@link DecoderRegistry#register(Factory)}
+     */
+    interface Factory {
+        /**
+         * Priority of backends which are fast and fully featured for a format, e.g. {@link android.graphics.BitmapRegionDecoder}
+         */
+        int PRIORITY_NATIVE = 100;
+        /**
+         * Priority of backends which work but are slow or limited for a format
+         */
+        int PRIORITY_FALLBACK = 10;
+        /**
+         * Priority of a format which is not supported
+         */
+        int PRIORITY_UNSUPPORTED = -1;
+
+        /**
+         * @param mimeType type of image, e.g. "image/jpeg"
+         * @return priority among factories supporting given type, higher first, or {@link #PRIORITY_UNSUPPORTED}
+         */
+        int getPriority(@NonNull String mimeType);
+
+        /**
+         * Create a backend
+         *
+         * @param is       stream at the start of image
+         * @param mimeType type of image
+         * @throws IOException if image cannot be decoded by this backend
+         */
+        @NonNull
+        DecoderBackend create(@NonNull InputStream is, @NonNull String mimeType) throws IOException;
+    }
+}
@@ -0,0 +1,199 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.BitmapFactory;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Chooses the {@link DecoderBackend} an image is decoded with.
+ * <p/>
+ * The type of image is sniffed from its first bytes, and factories supporting it are tried from the
+ * highest priority down until one succeeds. Built-in factories are, from fastest:
+ * <ol>
+ * <li>{@link android.graphics.BitmapRegionDecoder} for JPEG, PNG and WebP</li>
+ * <li>{@link BitmapFactory} for any format it decodes, e.g. GIF and BMP, keeping the whole image in
+ * memory at a reduced resolution. It takes PNG which {@link android.graphics.BitmapRegionDecoder}
+ * fails on only if it stays readable, i.e. at a sample size of at most 2</li>
+ * <li>A pure-Java PNG decoder at full resolution, for PNG nothing above decodes</li>
+ * </ol>
+ * Apps can register their own factories, e.g. one backed by {@code android.graphics.ImageDecoder}
+ * on API 28+, which are tried before built-in ones of the same priority.
+ */
+public final class DecoderRegistry {
+    private static final String TAG = "DecoderRegistry";
+    /**
+     * Bytes read to sniff type of image
+     */
+    private static final int SNIFF_BYTES = 32;
+    /**
+     * Read limit of marks on image streams. A decoder which fails may have read any part of the image,
+     * and {@link java.io.InputStream#available()} may be far less than the whole image, so streams are
+     * kept resettable however much is read
+     */
+    static final int MARK_LIMIT = Integer.MAX_VALUE;
+    private static final List<DecoderBackend.Factory> sBuiltIn = new ArrayList<>();
+    private static final List<DecoderBackend.Factory> sRegistered = new ArrayList<>();
+
+    static {
+        sBuiltIn.add(BitmapRegionDecoderBackend.FACTORY);
+        sBuiltIn.add(SampledBitmapBackend.FACTORY);
+        sBuiltIn.add(PngBackend.FACTORY);
+    }
+
+    private DecoderRegistry() {
+    }
+
+    /**
+     * Register a factory, which takes effect on images set afterwards
+     */
+    public static synchronized void register(@NonNull DecoderBackend.Factory factory) {
+        if (!sRegistered.contains(factory)) {
+            sRegistered.add(factory);
+        }
+    }
+
+    public static synchronized void unregister(@NonNull DecoderBackend.Factory factory) {
+        sRegistered.remove(factory);
+    }
+
+    /**
+     * @return factories supporting given type, in the order they should be tried
+     */
+    @NonNull
+    static synchronized List<DecoderBackend.Factory> getFactories(@NonNull final String mimeType) {
+        final List<DecoderBackend.Factory> factories = new ArrayList<>();
+        for (DecoderBackend.Factory factory : sRegistered) {
+            if (factory.getPriority(mimeType) >= 0) {
+                factories.add(factory);
+            }
+        }
+        for (DecoderBackend.Factory factory : sBuiltIn) {
+            if (factory.getPriority(mimeType) >= 0) {
+                factories.add(factory);
+            }
+        }
+        // stable, so registered factories stay ahead of built-in ones of the same priority
+        Collections.sort(factories, new Comparator<DecoderBackend.Factory>() {
+            @Override
+            public int compare(DecoderBackend.Factory lhs, DecoderBackend.Factory rhs) {
+                return rhs.getPriority(mimeType) - lhs.getPriority(mimeType);
+            }
+        });
+        return factories;
+    }
+
+    /**
+     * Create a backend with the best factory which succeeds
+     *
+     * @param is stream at the start of image, must support mark
+     * @throws IOException if no factory can decode the image
+     */
+    @NonNull
+    static DecoderBackend create(@NonNull InputStream is) throws IOException {
+        final String mimeType = readMimeType(is);
+        if (null == mimeType) {
+            throw new IOException("Unknown image type");
+        }
+        IOException lastError = null;
+        for (DecoderBackend.Factory factory : getFactories(mimeType)) {
+            is.mark(MARK_LIMIT);
+            try {
+                return factory.create(is, mimeType);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "create: " + factory + " failed on " + mimeType, e);
+                lastError = e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+            try {
+                is.reset();
+            } catch (IOException e) {
+                // the stream cannot be read again, report why the last factory failed
+                Log.e(TAG, "create: cannot reset stream after " + factory, e);
+                break;
+            }
+        }
+        throw null != lastError ? lastError : new IOException("No decoder for " + mimeType);
+    }
+
+    /**
+     * Read type of image from a marked stream, which is reset afterwards
+     *
+     * @return type of image, or null if unknown
+     */
+    @Nullable
+    private static String readMimeType(@NonNull InputStream is) throws IOException {
+        is.mark(MARK_LIMIT);
+        final byte[] header = new byte[SNIFF_BYTES];
+        int length = 0;
+        int read;
+        while (length < header.length && (read = is.read(header, length, header.length - length)) > 0) {
+            length += read;
+        }
+        is.reset();
+        final String mimeType = sniffMimeType(header, length);
+        if (null != mimeType) {
+            return mimeType;
+        }
+
+        // let the platform tell formats this class does not know
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        is.mark(MARK_LIMIT);
+        BitmapFactory.decodeStream(is, null, options);
+        is.reset();
+        return options.outMimeType;
+    }
+
+    /**
+     * Tell type of image by its first bytes
+     *
+     * @return type of image, or null if unknown
+     */
+    @Nullable
+    static String sniffMimeType(@NonNull byte[] header, int length) {
+        if (startsWith(header, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(header, length, 0, 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n')) {
+            return "image/png";
+        }
+        if (startsWith(header, length, 0, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith(header, length, 0, 'R', 'I', 'F', 'F') && startsWith(header, length, 8, 'W', 'E', 'B', 'P')) {
+            return "image/webp";
+        }
+        if (startsWith(header, length, 0, 'B', 'M')) {
+            return "image/bmp";
+        }
+        if (startsWith(header, length, 4, 'f', 't', 'y', 'p')) {
+            if (startsWith(header, length, 8, 'a', 'v', 'i', 'f') || startsWith(header, length, 8, 'a', 'v', 'i', 's')) {
+                return "image/avif";
+            }
+            if (startsWith(header, length, 8, 'h', 'e', 'i', 'c') || startsWith(header, length, 8, 'h', 'e', 'i', 'x')
+                    || startsWith(header, length, 8, 'm', 'i', 'f', '1') || startsWith(header, length, 8, 'm', 's', 'f', '1')) {
+                return "image/heif";
+            }
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] header, int length, int offset, int... magic) {
+        if (offset + magic.length > length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((header[offset + i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
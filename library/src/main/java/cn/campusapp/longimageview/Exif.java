@@ -0,0 +1,150 @@
+package cn.campusapp.longimageview;
+
+import android.support.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Minimal EXIF reader which only looks for orientation in JPEG headers.
+ * <p/>
+ * {@code ExifInterface} only reads files before API 24, while images here may come from any
+ * {@link InputStream}. This class has no dependency on Android framework.
+ */
+class Exif {
+    static final int ORIENTATION_NORMAL = 1;
+    static final int ORIENTATION_FLIP_HORIZONTAL = 2;
+    static final int ORIENTATION_ROTATE_180 = 3;
+    static final int ORIENTATION_FLIP_VERTICAL = 4;
+    static final int ORIENTATION_TRANSPOSE = 5;
+    static final int ORIENTATION_ROTATE_90 = 6;
+    static final int ORIENTATION_TRANSVERSE = 7;
+    static final int ORIENTATION_ROTATE_270 = 8;
+
+    private static final int MARKER_SOI = 0xFFD8;
+    private static final int MARKER_APP1 = 0xFFE1;
+    private static final int MARKER_SOS = 0xFFDA;
+    private static final int MARKER_EOI = 0xFFD9;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TYPE_SHORT = 3;
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+
+    private Exif() {
+    }
+
+    /**
+     * Read orientation from header of a JPEG, stream is consumed up to the EXIF segment
+     *
+     * @return one of ORIENTATION_* constants, {@link #ORIENTATION_NORMAL} if the stream is not a
+     * JPEG or has no orientation
+     */
+    static int readOrientation(@NonNull InputStream in) throws IOException {
+        final DataInputStream is = new DataInputStream(in);
+        try {
+            if (is.readUnsignedShort() != MARKER_SOI) {
+                return ORIENTATION_NORMAL;
+            }
+            while (true) {
+                final int marker = is.readUnsignedShort();
+                if ((marker & 0xFF00) != 0xFF00 || marker == MARKER_SOS || marker == MARKER_EOI) {
+                    // EXIF must come before image data
+                    return ORIENTATION_NORMAL;
+                }
+                final int length = is.readUnsignedShort() - 2;
+                if (length < 0) {
+                    return ORIENTATION_NORMAL;
+                }
+                if (marker == MARKER_APP1) {
+                    final byte[] segment = new byte[length];
+                    is.readFully(segment);
+                    // APP1 may also hold XMP, keep looking if so
+                    final int orientation = parseOrientation(segment);
+                    if (0 != orientation) {
+                        return orientation;
+                    }
+                } else {
+                    skipFully(is, length);
+                }
+            }
+        } catch (EOFException e) {
+            return ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * @return orientation in given APP1 segment, or 0 if not found
+     */
+    static int parseOrientation(@NonNull byte[] segment) {
+        final int tiff = EXIF_HEADER.length;
+        if (segment.length < tiff + 8) {
+            return 0;
+        }
+        for (int i = 0; i < tiff; i++) {
+            if (segment[i] != EXIF_HEADER[i]) {
+                return 0;
+            }
+        }
+        final boolean littleEndian;
+        if (segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+            littleEndian = true;
+        } else if (segment[tiff] == 'M' && segment[tiff + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return 0;
+        }
+        if (readShort(segment, tiff + 2, littleEndian) != 42) {
+            return 0;
+        }
+        final long ifd = tiff + readInt(segment, tiff + 4, littleEndian);
+        if (ifd + 2 > segment.length) {
+            return 0;
+        }
+        final int count = readShort(segment, (int) ifd, littleEndian);
+        for (int i = 0; i < count; i++) {
+            final int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > segment.length) {
+                return 0;
+            }
+            if (readShort(segment, entry, littleEndian) == TAG_ORIENTATION) {
+                if (readShort(segment, entry + 2, littleEndian) != TYPE_SHORT) {
+                    return 0;
+                }
+                final int orientation = readShort(segment, entry + 8, littleEndian);
+                return orientation >= ORIENTATION_NORMAL && orientation <= ORIENTATION_ROTATE_270 ? orientation : 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return true if width and height of image are swapped by given orientation
+     */
+    static boolean isTransposed(int orientation) {
+        return orientation >= ORIENTATION_TRANSPOSE;
+    }
+
+    private static int readShort(byte[] b, int offset, boolean littleEndian) {
+        final int b0 = b[offset] & 0xFF;
+        final int b1 = b[offset + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static long readInt(byte[] b, int offset, boolean littleEndian) {
+        final long high = readShort(b, littleEndian ? offset + 2 : offset, littleEndian);
+        final long low = readShort(b, littleEndian ? offset : offset + 2, littleEndian);
+        return (high << 16) | low;
+    }
+
+    private static void skipFully(DataInputStream is, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            final int skipped = is.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package cn.campusapp.longimageview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+import android.view.MotionEvent;
+
+/**
+ * A scrubber to jump through very long images.
+ * <p/>
+ * A thumb is drawn along the long axis of image (right edge for long images, bottom edge for
+ * panoramas). Dragging the thumb scrolls image in proportion, and a minimap rendered from the
+ * overview of {@link DecodeScheduler} is shown with current region marked on it, so it is clear
+ * where the image is scrubbed to before tiles of that region are decoded.
+ */
+class FastScroller {
+    /**
+     * Scrubber only shows up when image is at least this many viewports long
+     */
+    private static final int MIN_PAGES = 4;
+    private static final int THUMB_LENGTH_DP = 48;
+    private static final int THUMB_THICKNESS_DP = 6;
+    private static final int TOUCH_SLOP_DP = 16;
+    private static final int MARGIN_DP = 4;
+    private static final int THUMB_COLOR = 0xAA757575;
+    private static final int THUMB_DRAGGING_COLOR = 0xFF757575;
+    private static final int MINIMAP_BACKGROUND_COLOR = 0x99000000;
+    private static final int INDICATOR_COLOR = 0xFFFFFFFF;
+    /**
+     * Max ratio of minimap's thickness to view's size on the other axis
+     */
+    private static final float MINIMAP_MAX_RATIO = 0.25F;
+
+    private final Listener mListener;
+    private final int mThumbLength;
+    private final int mThumbThickness;
+    private final int mTouchSlop;
+    private final int mMargin;
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF mThumbRect = new RectF();
+    private final RectF mMinimapRect = new RectF();
+    private final RectF mIndicatorRect = new RectF();
+    private final Rect mRegion = new Rect();
+    private boolean mVertical;
+    private boolean mDragging;
+    /**
+     * Distance from touch point to the start of thumb when dragging starts
+     */
+    private float mGrabOffset;
+
+    FastScroller(@NonNull Context context, @NonNull Listener listener) {
+        final float density = context.getResources().getDisplayMetrics().density;
+        mListener = listener;
+        mThumbLength = (int) (THUMB_LENGTH_DP * density);
+        mThumbThickness = (int) (THUMB_THICKNESS_DP * density);
+        mTouchSlop = (int) (TOUCH_SLOP_DP * density);
+        mMargin = (int) (MARGIN_DP * density);
+        mPaint.setStrokeWidth(density);
+    }
+
+    /**
+     * @return true if image is long enough to scrub through
+     */
+    private boolean isScrubbable(@NonNull RegionDecoder regionDecoder) {
+        regionDecoder.saveCurrentRegion(mRegion);
+        if (mRegion.isEmpty()) {
+            return false;
+        }
+        // scrub along the axis on which image is longer relative to current region
+        mVertical = (long) regionDecoder.getAvailableHeight() * mRegion.width()
+                >= (long) regionDecoder.getImageWidth() * mRegion.height();
+        return mVertical
+                ? regionDecoder.getAvailableHeight() >= MIN_PAGES * mRegion.height()
+                : regionDecoder.getImageWidth() >= MIN_PAGES * mRegion.width();
+    }
+
+    /**
+     * Layout thumb according to current region, {@link #isScrubbable(RegionDecoder)} must be called before
+     */
+    private void layoutThumb(@NonNull RegionDecoder regionDecoder, @NonNull Rect viewPort) {
+        final float fraction = regionDecoder.getScrollFraction(mVertical);
+        if (mVertical) {
+            final float top = viewPort.top + fraction * (viewPort.height() - mThumbLength);
+            final float right = viewPort.right - mMargin;
+            mThumbRect.set(right - mThumbThickness, top, right, top + mThumbLength);
+        } else {
+            final float left = viewPort.left + fraction * (viewPort.width() - mThumbLength);
+            final float bottom = viewPort.bottom - mMargin;
+            mThumbRect.set(left, bottom - mThumbThickness, left + mThumbLength, bottom);
+        }
+    }
+
+    /**
+     * Handle touch event before gestures of view
+     *
+     * @return true if the event is consumed by scrubber
+     */
+    boolean onTouchEvent(@NonNull MotionEvent event, @NonNull RegionDecoder regionDecoder, @NonNull Rect viewPort) {
+        final int action = event.getActionMasked();
+        if (!mDragging) {
+            if (action != MotionEvent.ACTION_DOWN || !isScrubbable(regionDecoder)) {
+                return false;
+            }
+            layoutThumb(regionDecoder, viewPort);
+            final float x = event.getX();
+            final float y = event.getY();
+            if (x < mThumbRect.left - mTouchSlop || x > mThumbRect.right + mTouchSlop
+                    || y < mThumbRect.top - mTouchSlop || y > mThumbRect.bottom + mTouchSlop) {
+                return false;
+            }
+            mGrabOffset = mVertical
+                    ? Math.min(mThumbLength, Math.max(0, y - mThumbRect.top))
+                    : Math.min(mThumbLength, Math.max(0, x - mThumbRect.left));
+            mDragging = true;
+            mListener.onScrubStart();
+            return true;
+        }
+
+        switch (action) {
+            case MotionEvent.ACTION_MOVE:
+                final float track = mVertical ? viewPort.height() - mThumbLength : viewPort.width() - mThumbLength;
+                final float position = mVertical ? event.getY() - viewPort.top : event.getX() - viewPort.left;
+                final float fraction = track <= 0 ? 0 : Math.min(1F, Math.max(0F, (position - mGrabOffset) / track));
+                if (regionDecoder.scrollToFraction(fraction, mVertical)) {
+                    mListener.onScrub();
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mDragging = false;
+                mListener.onScrubEnd();
+                break;
+            default:
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Draw thumb, and minimap while dragging
+     *
+     * @param overview overview of image, or null if not decoded yet
+     */
+    void draw(@NonNull Canvas canvas, @NonNull RegionDecoder regionDecoder, Tile overview, @NonNull Rect viewPort) {
+        if (!mDragging && !isScrubbable(regionDecoder)) {
+            return;
+        }
+        regionDecoder.saveCurrentRegion(mRegion);
+        layoutThumb(regionDecoder, viewPort);
+        if (mDragging && null != overview && null != overview.bitmap) {
+            drawMinimap(canvas, regionDecoder, overview, viewPort);
+        }
+        mPaint.setStyle(Paint.Style.FILL);
+        mPaint.setColor(mDragging ? THUMB_DRAGGING_COLOR : THUMB_COLOR);
+        final float radius = mThumbThickness / 2F;
+        canvas.drawRoundRect(mThumbRect, radius, radius, mPaint);
+    }
+
+    private void drawMinimap(@NonNull Canvas canvas, @NonNull RegionDecoder regionDecoder, @NonNull Tile overview, @NonNull Rect viewPort) {
+        // fit overview in a strip along the thumb, keeping aspect ratio
+        final float imageWidth = regionDecoder.getImageWidth();
+        final float imageHeight = regionDecoder.getImageHeight();
+        final float scale;
+        if (mVertical) {
+            scale = Math.min((viewPort.height() - 2 * mMargin) / imageHeight, viewPort.width() * MINIMAP_MAX_RATIO / imageWidth);
+            final float right = mThumbRect.left - mMargin;
+            final float top = viewPort.top + (viewPort.height() - imageHeight * scale) / 2;
+            mMinimapRect.set(right - imageWidth * scale, top, right, top + imageHeight * scale);
+        } else {
+            scale = Math.min((viewPort.width() - 2 * mMargin) / imageWidth, viewPort.height() * MINIMAP_MAX_RATIO / imageHeight);
+            final float bottom = mThumbRect.top - mMargin;
+            final float left = viewPort.left + (viewPort.width() - imageWidth * scale) / 2;
+            mMinimapRect.set(left, bottom - imageHeight * scale, left + imageWidth * scale, bottom);
+        }
+
+        mPaint.setStyle(Paint.Style.FILL);
+        mPaint.setColor(MINIMAP_BACKGROUND_COLOR);
+        canvas.drawRect(mMinimapRect.left - mMargin, mMinimapRect.top - mMargin,
+                mMinimapRect.right + mMargin, mMinimapRect.bottom + mMargin, mPaint);
+        canvas.drawBitmap(overview.bitmap, null, mMinimapRect, mBitmapPaint);
+
+        mIndicatorRect.set(
+                mMinimapRect.left + mRegion.left * scale,
+                mMinimapRect.top + mRegion.top * scale,
+                mMinimapRect.left + mRegion.right * scale,
+                mMinimapRect.top + mRegion.bottom * scale
+        );
+        mPaint.setStyle(Paint.Style.STROKE);
+        mPaint.setColor(INDICATOR_COLOR);
+        canvas.drawRect(mIndicatorRect, mPaint);
+    }
+
+    interface Listener {
+        /**
+         * Called when the thumb is grabbed
+         */
+        void onScrubStart();
+
+        /**
+         * Called when region is moved by dragging the thumb
+         */
+        void onScrub();
+
+        /**
+         * Called when the thumb is released
+         */
+        void onScrubEnd();
+    }
+}
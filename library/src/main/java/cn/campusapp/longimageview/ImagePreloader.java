@@ -0,0 +1,304 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.UiThread;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Prepares images which are about to be shown, e.g. the next page of a {@link android.support.v4.view.ViewPager}.
+ * <p/>
+ * Opening the source and building the decoder happen in background, then tiles of the initial
+ * viewport and the overview are decoded as they would be in a view of given size. A later
+ * {@link LongImageView#setImage(String, Source)} or {@link LongImageView#setImage(File)} with the same
+ * key takes over the prepared image instantly, or as soon as it is ready.
+ * <p/>
+ * Preloading runs on its own thread at the lowest priority, so that it does not hold up decoding of
+ * images which are shown. Only the {@link #MAX_PRELOADED} most recent preloads are kept, older ones
+ * are released. All methods must be called on main thread.
+ */
+public final class ImagePreloader {
+    private static final String TAG = "ImagePreloader";
+    /**
+     * Max preloaded images kept until taken by a view
+     */
+    private static final int MAX_PRELOADED = 2;
+    private static final DecodeScheduler.Callback NO_OP_CALLBACK = new DecodeScheduler.Callback() {
+        @Override
+        public void onTilesPublished() {
+        }
+    };
+    private static final LinkedHashMap<String, Entry> sEntries = new LinkedHashMap<>(4, 0.75F, true);
+    private static Executor sExecutor;
+
+    private ImagePreloader() {
+    }
+
+    /**
+     * Preload an image
+     *
+     * @param key     identifies the image, pass the same key to {@link LongImageView#setImage(String, Source)}
+     * @param source  opens the image, called on a background thread
+     * @param width   width of the view which will show the image, 0 if unknown
+     * @param height  height of the view which will show the image, 0 if unknown
+     * @param fitMode fit mode of that view
+     */
+    @UiThread
+    public static void preload(@NonNull String key, @NonNull Source source, int width, int height, @LongImageView.FitMode int fitMode) {
+        if (sEntries.containsKey(key)) {
+            return;
+        }
+        final Entry entry = new Entry(source, width, height, fitMode, getExecutor(), true);
+        sEntries.put(key, entry);
+        final Iterator<Map.Entry<String, Entry>> iterator = sEntries.entrySet().iterator();
+        while (sEntries.size() > MAX_PRELOADED && iterator.hasNext()) {
+            final Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            eldest.release();
+        }
+        entry.start();
+    }
+
+    /**
+     * Preload an image file, taken by {@link LongImageView#setImage(File)} of the same file
+     */
+    @UiThread
+    public static void preload(@NonNull final File file, int width, int height, @LongImageView.FitMode int fitMode) {
+        preload(file.getAbsolutePath(), new Source() {
+            @NonNull
+            @Override
+            public InputStream open() throws IOException {
+                return new FileInputStream(file);
+            }
+        }, width, height, fitMode);
+    }
+
+    /**
+     * Release a preloaded image which is no longer expected to be shown
+     */
+    @UiThread
+    public static void cancel(@NonNull String key) {
+        final Entry entry = sEntries.remove(key);
+        if (null != entry) {
+            entry.release();
+        }
+    }
+
+    /**
+     * Release all preloaded images, e.g. on low memory
+     */
+    @UiThread
+    public static void clear() {
+        for (Entry entry : sEntries.values()) {
+            entry.release();
+        }
+        sEntries.clear();
+    }
+
+    /**
+     * Open an image in background for a view, which is not kept for anyone else
+     *
+     * @param executor executor to open and decode on
+     * @return image being opened, the caller is responsible for releasing it
+     */
+    @NonNull
+    static Entry open(@NonNull Source source, int width, int height, @LongImageView.FitMode int fitMode, @NonNull Executor executor) {
+        final Entry entry = new Entry(source, width, height, fitMode, executor, false);
+        entry.start();
+        return entry;
+    }
+
+    private static Executor getExecutor() {
+        if (null == sExecutor) {
+            sExecutor = DecodeExecutor.newPool(1, Process.THREAD_PRIORITY_LOWEST);
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Take a preloaded image, the caller becomes responsible for releasing it
+     *
+     * @return preloaded image, or null if given key is not preloaded
+     */
+    @Nullable
+    static Entry take(@NonNull String key) {
+        return sEntries.remove(key);
+    }
+
+    /**
+     * Opens an image to show or preload
+     */
+    public interface Source {
+        /**
+         * @return a new stream at the start of image, closed by caller
+         */
+        @NonNull
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * An image being preloaded, touched on main thread only except where noted
+     */
+    static final class Entry {
+        private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+        private final Source mSource;
+        private final int mWidth;
+        private final int mHeight;
+        @LongImageView.FitMode
+        private final int mFitMode;
+        private final Executor mExecutor;
+        private final boolean mPreloaded;
+        private RegionDecoder mRegionDecoder;
+        private DecodeScheduler mDecodeScheduler;
+        private boolean mDone;
+        private boolean mReleased;
+        private Runnable mOnDone;
+
+        private Entry(@NonNull Source source, int width, int height, @LongImageView.FitMode int fitMode,
+                      @NonNull Executor executor, boolean preloaded) {
+            mSource = source;
+            mWidth = width;
+            mHeight = height;
+            mFitMode = fitMode;
+            mExecutor = executor;
+            mPreloaded = preloaded;
+        }
+
+        @NonNull
+        Source getSource() {
+            return mSource;
+        }
+
+        private void start() {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final RegionDecoder regionDecoder = open();
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onOpened(regionDecoder);
+                        }
+                    });
+                }
+            });
+        }
+
+        /**
+         * Build decoder, on a background thread
+         */
+        @Nullable
+        private RegionDecoder open() {
+            InputStream is = null;
+            try {
+                is = mSource.open();
+                return new RegionDecoder(is);
+            } catch (Throwable t) {
+                Log.e(TAG, "open: failed", t);
+                return null;
+            } finally {
+                if (null != is) {
+                    try {
+                        is.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+
+        private void onOpened(@Nullable RegionDecoder regionDecoder) {
+            if (mReleased) {
+                if (null != regionDecoder) {
+                    regionDecoder.close();
+                }
+                return;
+            }
+            if (null != regionDecoder) {
+                regionDecoder.setFitMode(mFitMode);
+                regionDecoder.setDisplayRect(new Rect(0, 0, mWidth, mHeight));
+                mRegionDecoder = regionDecoder;
+                // refresh rate is set by the view which takes it over
+                mDecodeScheduler = new DecodeScheduler(regionDecoder, NO_OP_CALLBACK, 0, mExecutor);
+                mDecodeScheduler.setOverviewEnabled(true);
+                // decodes tiles of initial viewport as a view of that size would
+                mDecodeScheduler.onRegionChanged();
+            }
+            mDone = true;
+            final Runnable onDone = mOnDone;
+            mOnDone = null;
+            if (null != onDone) {
+                onDone.run();
+            }
+        }
+
+        /**
+         * @return true if opened by {@link #preload(String, Source, int, int, int)}, possibly long
+         * before being taken
+         */
+        boolean isPreloaded() {
+            return mPreloaded;
+        }
+
+        /**
+         * @return whether preloading has finished, successfully or not
+         */
+        boolean isDone() {
+            return mDone;
+        }
+
+        /**
+         * @return prepared decoder, or null if not done or failed
+         */
+        @Nullable
+        RegionDecoder getRegionDecoder() {
+            return mRegionDecoder;
+        }
+
+        @Nullable
+        DecodeScheduler getDecodeScheduler() {
+            return mDecodeScheduler;
+        }
+
+        /**
+         * Run given task once done, replacing any task set before
+         */
+        void setOnDone(@Nullable Runnable onDone) {
+            mOnDone = onDone;
+        }
+
+        /**
+         * Hand over decoder and scheduler, which this entry no longer releases
+         */
+        void detach() {
+            mRegionDecoder = null;
+            mDecodeScheduler = null;
+            mReleased = true;
+        }
+
+        void release() {
+            mReleased = true;
+            mOnDone = null;
+            if (null != mDecodeScheduler) {
+                mDecodeScheduler.close();
+                mDecodeScheduler = null;
+            }
+            if (null != mRegionDecoder) {
+                mRegionDecoder.close();
+                mRegionDecoder = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link DecoderBackend} of an {@link IncrementalImageSource}.
+ * <p/>
+ * {@link BitmapRegionDecoder} only sees the bytes which exist when it is created, so it is rebuilt by
+ * {@link #refresh()} as the file grows, and rows below {@link #getAvailableHeight()} are not meant
+ * to be decoded yet.
+ */
+class IncrementalBackend implements DecoderBackend {
+    private static final String TAG = "IncrementalBackend";
+    /**
+     * Min growth of file to rebuild decoder, rebuilding reads the whole file again
+     */
+    private static final long MIN_REFRESH_BYTES = 64 * 1024;
+    /**
+     * Min growth of file relative to the length the decoder was built from, so that rebuilding reads
+     * the file a logarithmic number of times instead of once every {@link #MIN_REFRESH_BYTES}
+     */
+    private static final float REFRESH_GROWTH = 1.5F;
+    /**
+     * Share of the rows estimated by length which are considered available, compressed data is not
+     * spread evenly across rows, so the estimate alone may run ahead of the actual data
+     */
+    private static final float SAFE_ROWS_RATIO = 0.75F;
+    /**
+     * Bytes to read when sniffing whether image is encoded sequentially
+     */
+    private static final int SNIFF_BYTES = 64 * 1024;
+    private final IncrementalImageSource mSource;
+    private final int mWidth;
+    private final int mHeight;
+    private final Object mLock = new Object();
+    /**
+     * Guarded by {@link #mLock}
+     */
+    private BitmapRegionDecoder mDecoder;
+    private long mDecoderLength;
+    private int mSequential = -1;
+    private boolean mRecycled;
+    private volatile int mAvailableHeight;
+
+    private IncrementalBackend(IncrementalImageSource source, int width, int height) {
+        mSource = source;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * Create backend once header of image is available
+     *
+     * @return backend, or null if header is not available yet
+     */
+    @Nullable
+    static IncrementalBackend open(@NonNull IncrementalImageSource source) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(source.getFile().getAbsolutePath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        return new IncrementalBackend(source, options.outWidth, options.outHeight);
+    }
+
+    /**
+     * Estimate rows which are fully available, conservatively since rows are not of equal size
+     *
+     * @param availableLength bytes available
+     * @param totalLength     total bytes, or -1 if unknown
+     * @param height          image height
+     * @param sequential      whether rows are encoded from top to bottom
+     * @return available rows
+     */
+    static int estimateAvailableHeight(long availableLength, long totalLength, int height, boolean sequential) {
+        if (totalLength > 0 && availableLength >= totalLength) {
+            return height;
+        }
+        if (totalLength <= 0 || !sequential) {
+            return 0;
+        }
+        return (int) (height * availableLength / totalLength * SAFE_ROWS_RATIO);
+    }
+
+    /**
+     * Whether a file of given length is worth rebuilding decoder for
+     *
+     * @param length        available bytes
+     * @param decoderLength bytes current decoder is built from, 0 if none
+     */
+    static boolean shouldRefresh(long length, long decoderLength) {
+        return length - decoderLength >= MIN_REFRESH_BYTES && length >= decoderLength * REFRESH_GROWTH;
+    }
+
+    /**
+     * Whether rows of image are encoded from top to bottom: baseline JPEG or non-interlaced PNG
+     */
+    static boolean isSequential(byte[] header, int length) {
+        if (length > 28 && (header[0] & 0xFF) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G') {
+            // interlace method of IHDR chunk
+            return header[28] == 0;
+        }
+        if (length > 3 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8) {
+            int offset = 2;
+            while (offset + 4 <= length && (header[offset] & 0xFF) == 0xFF) {
+                final int marker = header[offset + 1] & 0xFF;
+                if (marker == 0xC0 || marker == 0xC1) {
+                    return true;
+                }
+                if (marker >= 0xC2 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                    // progressive, lossless or arithmetic coding
+                    return false;
+                }
+                offset += 2 + ((header[offset + 2] & 0xFF) << 8 | (header[offset + 3] & 0xFF));
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return rows which are fully available and can be decoded
+     */
+    int getAvailableHeight() {
+        return mAvailableHeight;
+    }
+
+    boolean isComplete() {
+        return mSource.isComplete() && mAvailableHeight == mHeight;
+    }
+
+    /**
+     * Rebuild decoder if file has grown enough, called on a background thread
+     *
+     * @return true if more rows become available
+     */
+    synchronized boolean refresh() {
+        final long length = mSource.getAvailableLength();
+        final boolean complete = mSource.isComplete();
+        synchronized (mLock) {
+            if (mRecycled || (complete ? mAvailableHeight == mHeight : !shouldRefresh(length, mDecoderLength))) {
+                return false;
+            }
+            if (mSequential < 0) {
+                mSequential = sniffSequential() ? 1 : 0;
+            }
+        }
+        final int availableHeight = estimateAvailableHeight(length,
+                complete ? length : mSource.getTotalLength(), mHeight, mSequential == 1);
+        if (availableHeight <= mAvailableHeight) {
+            return false;
+        }
+
+        final BitmapRegionDecoder decoder;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(mSource.getFile().getAbsolutePath(), false);
+        } catch (Throwable t) {
+            Log.w(TAG, "refresh: failed, length=" + length, t);
+            return false;
+        }
+        final BitmapRegionDecoder lastDecoder;
+        synchronized (mLock) {
+            if (mRecycled) {
+                lastDecoder = decoder;
+            } else {
+                lastDecoder = mDecoder;
+                mDecoder = decoder;
+                mDecoderLength = length;
+            }
+        }
+        if (null != lastDecoder) {
+            lastDecoder.recycle();
+        }
+        mAvailableHeight = availableHeight;
+        return true;
+    }
+
+    private boolean sniffSequential() {
+        InputStream is = null;
+        try {
+            is = new FileInputStream(mSource.getFile());
+            final byte[] header = new byte[SNIFF_BYTES];
+            int length = 0;
+            int read;
+            while (length < header.length && (read = is.read(header, length, header.length - length)) > 0) {
+                length += read;
+            }
+            return isSequential(header, length);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (null != is) {
+                try {
+                    is.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getCapabilities() {
+        return CAPABILITY_REGION | CAPABILITY_REUSE_BITMAP | CAPABILITY_QUALITY_HINT;
+    }
+
+    @Override
+    public Bitmap decodeRegion(@NonNull Rect rect, @NonNull BitmapFactory.Options options) {
+        final BitmapRegionDecoder decoder;
+        synchronized (mLock) {
+            decoder = mDecoder;
+        }
+        // a replaced decoder may be recycled meanwhile, the tile will be rescheduled in that case
+        return null == decoder ? null : decoder.decodeRegion(rect, options);
+    }
+
+    @Override
+    public void recycle() {
+        synchronized (mLock) {
+            if (null != mDecoder) {
+                mDecoder.recycle();
+                mDecoder = null;
+            }
+            mRecycled = true;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package cn.campusapp.longimageview;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+
+/**
+ * An image file which is still being written, e.g. downloaded over a slow network.
+ * <p/>
+ * Pass it to {@link LongImageView#setImage(IncrementalImageSource)}, then call
+ * {@link #notifyBytesAvailable()} whenever more bytes are appended to the file and
+ * {@link #notifyComplete()} when the file is complete. Rows which have arrived are shown
+ * as soon as the image header is available.
+ * <p/>
+ * Rows are estimated by the ratio of bytes written to {@code totalLength}, so only sequential
+ * (baseline JPEG, non-interlaced PNG) images with known length are shown incrementally, other
+ * images are shown once complete.
+ */
+public class IncrementalImageSource {
+    private final File mFile;
+    private final long mTotalLength;
+    private volatile boolean mComplete;
+    private volatile Listener mListener;
+
+    /**
+     * @param file        file being written
+     * @param totalLength expected length of file in bytes, e.g. Content-Length, or -1 if unknown
+     */
+    public IncrementalImageSource(@NonNull File file, long totalLength) {
+        mFile = file;
+        mTotalLength = totalLength;
+    }
+
+    public IncrementalImageSource(@NonNull File file) {
+        this(file, -1);
+    }
+
+    @NonNull
+    public File getFile() {
+        return mFile;
+    }
+
+    public long getTotalLength() {
+        return mTotalLength;
+    }
+
+    public boolean isComplete() {
+        return mComplete;
+    }
+
+    /**
+     * Bytes of file which are available to decode
+     */
+    long getAvailableLength() {
+        final long length = mFile.length();
+        return mComplete || mTotalLength < 0 ? length : Math.min(length, mTotalLength);
+    }
+
+    /**
+     * Notify that more bytes are written to file, may be called on any thread
+     */
+    public void notifyBytesAvailable() {
+        final Listener listener = mListener;
+        if (null != listener) {
+            listener.onSourceChanged(this);
+        }
+    }
+
+    /**
+     * Notify that file is complete, may be called on any thread
+     */
+    public void notifyComplete() {
+        mComplete = true;
+        notifyBytesAvailable();
+    }
+
+    void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    interface Listener {
+        /**
+         * Called on the thread which notifies the change
+         */
+        void onSourceChanged(@NonNull IncrementalImageSource source);
+    }
+}
@@ -1,5 +1,7 @@
 package cn.campusapp.longimageview;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
 import android.animation.TypeEvaluator;
 import android.animation.ValueAnimator;
 import android.annotation.TargetApi;
@@ -7,6 +9,7 @@ import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.PixelFormat;
 import android.graphics.PointF;
 import android.graphics.Rect;
@@ -18,7 +21,9 @@ import android.os.Looper;
 import android.os.SystemClock;
 import android.support.annotation.CallSuper;
 import android.support.annotation.DrawableRes;
+import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.UiThread;
 import android.support.v4.content.ContextCompat;
 import android.util.AttributeSet;
@@ -27,14 +32,20 @@ import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
 import android.view.View;
+import android.view.ViewParent;
 import android.view.ViewConfiguration;
+import android.view.WindowManager;
 import android.view.animation.DecelerateInterpolator;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.Executor;
 
 /**
  * A view to show long image.
@@ -42,6 +53,12 @@ import java.io.InputStream;
  * Supported features:
  * <ol>
  * <li>Region decode on long image</li>
+ * <li>Long, wide and huge 2D images, see {@link #setFitMode(int)}</li>
+ * <li>Show partially downloaded images, see {@link #setImage(IncrementalImageSource)}</li>
+ * <li>Fast scroll through very long images, see {@link #setFastScrollEnabled(boolean)}</li>
+ * <li>Back buffer for cheap scrolling, see {@link #setScrollBlitEnabled(boolean)}</li>
+ * <li>Decoding on executor of the app, see {@link #setDecodeExecutor(Executor)}</li>
+ * <li>Lower quality under thermal or power pressure, see {@link #setAdaptiveQualityEnabled(boolean)}</li>
  * <li>Scroll</li>
  * <li>Zoom</li>
  * <li>Gestures</li>
@@ -52,7 +69,23 @@ import java.io.InputStream;
 @SuppressWarnings("UnusedDeclaration")
 public class LongImageView extends View {
     public static final long DEFAULT_DURATION = 300L;
+    /**
+     * Scale image to fill view's width, suits long images
+     */
+    public static final int FIT_WIDTH = 0;
+    /**
+     * Scale image to fill view's height, suits horizontal panoramas
+     */
+    public static final int FIT_HEIGHT = 1;
+    /**
+     * Scale image to be fully shown inside view, suits big 2D images such as maps
+     */
+    public static final int FIT_INSIDE = 2;
     private static final String TAG = "LongImageView";
+    /**
+     * Upper bound of default size of compressed tile cache, in bytes
+     */
+    private static final int MAX_DEFAULT_COMPRESSED_CACHE_SIZE = 8 * 1024 * 1024;
     public static long MIN_FLING_DELTA_TIME = 150L;
     private final GestureListener mOnGestureListener = new GestureListener();
     private final ScaleListener mOnScaleListener = new ScaleListener();
@@ -63,13 +96,93 @@ public class LongImageView extends View {
     private final RectF mTargetRect = new RectF();
     private final ValueAnimator mRegionAnimator = ValueAnimator.ofObject(new RectFEvaluator(), mStartRect, mTargetRect);
     private final Rect mBitmapRegion = new Rect();
+    private final Paint mTilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final DecodeScheduler.Callback mDecodeCallback = new DecodeScheduler.Callback() {
+        @Override
+        public void onTilesPublished() {
+            invalidate();
+        }
+    };
+    private final FastScroller.Listener mFastScrollListener = new FastScroller.Listener() {
+        @Override
+        public void onScrubStart() {
+            stopAllAnimation();
+            final ViewParent parent = getParent();
+            if (null != parent) {
+                parent.requestDisallowInterceptTouchEvent(true);
+            }
+            final DecodeScheduler decodeScheduler = mDecodeScheduler;
+            if (null != decodeScheduler) {
+                decodeScheduler.setScrubbing(true);
+            }
+            invalidate();
+        }
+
+        @Override
+        public void onScrub() {
+            onRegionChanged();
+        }
+
+        @Override
+        public void onScrubEnd() {
+            final DecodeScheduler decodeScheduler = mDecodeScheduler;
+            if (null != decodeScheduler) {
+                decodeScheduler.setScrubbing(false);
+            }
+            invalidate();
+        }
+    };
     private GestureDetector mGestureDetector;
     private ScaleGestureDetector mScaleGestureDetector;
     private RegionDecoder mRegionDecoder;
+    private DecodeScheduler mDecodeScheduler;
+    private FastScroller mFastScroller;
+    private ScrollBlitter mScrollBlitter;
+    private Executor mDecodeExecutor;
+    private int mCompressedTileCacheSize = (int) Math.min(MAX_DEFAULT_COMPRESSED_CACHE_SIZE, Runtime.getRuntime().maxMemory() / 16);
+    private final QualityController.Listener mQualityListener = new QualityController.Listener() {
+        @Override
+        public void onQualityLevelChanged(int level) {
+            onRegionChanged();
+        }
+    };
+    /**
+     * Controller this view listens to while attached, null if detached or adaptive quality is disabled
+     */
+    private QualityController mQualityController;
+    /**
+     * Executor the controller limits on behalf of this view, see {@link #updateQualityExecutor()}
+     */
+    private DecodeExecutor mQualityExecutor;
+    private boolean mAdaptiveQualityEnabled = true;
+    private boolean mAttached;
+    private IncrementalImageSource mIncrementalSource;
+    /**
+     * Preloaded image this view waits for, see {@link #adoptPreloaded(ImagePreloader.Entry)}
+     */
+    private ImagePreloader.Entry mPendingPreload;
+    /**
+     * Source of the pending preload released on detach, opened again on attach
+     */
+    private ImagePreloader.Source mDetachedSource;
+    private IncrementalBackend mIncrementalBackend;
+    private final IncrementalImageSource.Listener mSourceListener = new IncrementalImageSource.Listener() {
+        @Override
+        public void onSourceChanged(@NonNull final IncrementalImageSource source) {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    onIncrementalSourceChanged(source);
+                }
+            });
+        }
+    };
     private long mPointerUpTime;
     private float mMinFlingVelocity;
     private float mMaxFlingVelocity;
     private boolean mImageChanged = true;
+    @FitMode
+    private int mFitMode = FIT_WIDTH;
 
     public LongImageView(Context context) {
         super(context);
@@ -126,13 +239,27 @@ public class LongImageView extends View {
                 final RectF intermediateRect = (RectF) animation.getAnimatedValue();
                 if (intermediateRect != null) {
                     regionDecoder.updateRegion(intermediateRect);
-                    invalidate();
+                    onRegionChanged();
+                }
+            }
+        });
+        mRegionAnimator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                final DecodeScheduler decodeScheduler = mDecodeScheduler;
+                if (null != decodeScheduler) {
+                    decodeScheduler.setFlinging(false);
+                    decodeScheduler.setZooming(false);
                 }
             }
         });
 
         final TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.LongImageView);
         try {
+            //noinspection WrongConstant
+            mFitMode = ta.getInt(R.styleable.LongImageView_fitMode, FIT_WIDTH);
+            setFastScrollEnabled(ta.getBoolean(R.styleable.LongImageView_fastScrollEnabled, false));
+            setScrollBlitEnabled(ta.getBoolean(R.styleable.LongImageView_scrollBlitEnabled, false));
             final Drawable drawable = ta.getDrawable(R.styleable.LongImageView_src);
             if (null != drawable) {
                 setImage(drawable);
@@ -148,24 +275,224 @@ public class LongImageView extends View {
             throw new RuntimeException("must call this method on main thread");
         }
         try {
-            mImageChanged = true;
-            final RegionDecoder lastDecoder = mRegionDecoder;
-            if (null != lastDecoder) {
-                lastDecoder.close();
+            detachIncrementalSource();
+            setRegionDecoder(new RegionDecoder(is));
+        } catch (Throwable t) {
+            Log.e(TAG, "setImage(InputStream): failed", t);
+        }
+    }
+
+    /**
+     * Show an image which is still being written, rows are shown as they arrive
+     *
+     * @param source image file being written
+     */
+    @UiThread
+    public void setImage(@NonNull IncrementalImageSource source) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new RuntimeException("must call this method on main thread");
+        }
+        detachIncrementalSource();
+        releaseRegionDecoder();
+        invalidate();
+        mIncrementalSource = source;
+        source.setListener(mSourceListener);
+        onIncrementalSourceChanged(source);
+    }
+
+    /**
+     * Show an image preloaded by {@link ImagePreloader#preload(String, ImagePreloader.Source, int, int, int)}
+     * with the same key, or open given source if it is not preloaded
+     *
+     * @param key    key of image
+     * @param source opens the image if it is not preloaded
+     */
+    @UiThread
+    public void setImage(@NonNull String key, @NonNull ImagePreloader.Source source) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new RuntimeException("must call this method on main thread");
+        }
+        final ImagePreloader.Entry preloaded = ImagePreloader.take(key);
+        if (null != preloaded) {
+            adoptPreloaded(preloaded);
+            return;
+        }
+        openImage(source);
+    }
+
+    private void openImage(@NonNull ImagePreloader.Source source) {
+        InputStream is = null;
+        try {
+            is = source.open();
+            setImage(is);
+        } catch (Throwable t) {
+            Log.e(TAG, "openImage: failed", t);
+        } finally {
+            if (null != is) {
+                try {
+                    is.close();
+                } catch (IOException ignored) {
+                }
             }
-            mRegionDecoder = new RegionDecoder(is);
-            requestLayout();
-            invalidate();
+        }
+    }
 
-            // double invalidate to avoid some bugs
-            post(new Runnable() {
+    /**
+     * Take over decoder and tiles of a preloaded image, once it is ready
+     */
+    private void adoptPreloaded(@NonNull final ImagePreloader.Entry preloaded) {
+        detachIncrementalSource();
+        if (!preloaded.isDone()) {
+            releaseRegionDecoder();
+            invalidate();
+            mPendingPreload = preloaded;
+            preloaded.setOnDone(new Runnable() {
                 @Override
                 public void run() {
-                    postInvalidate();
+                    if (mPendingPreload == preloaded) {
+                        mPendingPreload = null;
+                        adoptPreloaded(preloaded);
+                    }
                 }
             });
-        } catch (Throwable t) {
-            Log.e(TAG, "setImage(InputStream): failed", t);
+            return;
+        }
+        final RegionDecoder regionDecoder = preloaded.getRegionDecoder();
+        final DecodeScheduler decodeScheduler = preloaded.getDecodeScheduler();
+        if (null == regionDecoder || null == decodeScheduler) {
+            preloaded.release();
+            if (preloaded.isPreloaded()) {
+                // the cause may be gone since preloading, try again in background
+                openInBackground(preloaded.getSource());
+            }
+            return;
+        }
+        preloaded.detach();
+        decodeScheduler.setRefreshRate(getRefreshRate());
+        setRegionDecoder(regionDecoder, decodeScheduler);
+    }
+
+    private void openInBackground(@NonNull ImagePreloader.Source source) {
+        adoptPreloaded(ImagePreloader.open(source, mViewPort.width(), mViewPort.height(), mFitMode, getDecodeExecutor()));
+    }
+
+    private void setRegionDecoder(@NonNull RegionDecoder regionDecoder) {
+        setRegionDecoder(regionDecoder, new DecodeScheduler(regionDecoder, mDecodeCallback, getRefreshRate(), getDecodeExecutor()));
+    }
+
+    private void setRegionDecoder(@NonNull RegionDecoder regionDecoder, @NonNull DecodeScheduler decodeScheduler) {
+        releaseRegionDecoder();
+        mRegionDecoder = regionDecoder;
+        mRegionDecoder.setFitMode(mFitMode);
+        mDecodeScheduler = decodeScheduler;
+        mDecodeScheduler.setCallback(mDecodeCallback);
+        mDecodeScheduler.setExecutor(getDecodeExecutor());
+        mDecodeScheduler.setOverviewEnabled(null != mFastScroller);
+        mDecodeScheduler.setQualityController(mQualityController);
+        mDecodeScheduler.setTileCache(createTileCache());
+        requestLayout();
+        invalidate();
+
+        // double invalidate to avoid some bugs
+        post(new Runnable() {
+            @Override
+            public void run() {
+                postInvalidate();
+            }
+        });
+    }
+
+    private void releaseRegionDecoder() {
+        mImageChanged = true;
+        mDetachedSource = null;
+        final ImagePreloader.Entry pendingPreload = mPendingPreload;
+        if (null != pendingPreload) {
+            pendingPreload.release();
+            mPendingPreload = null;
+        }
+        final ScrollBlitter scrollBlitter = mScrollBlitter;
+        if (null != scrollBlitter) {
+            scrollBlitter.invalidate();
+        }
+        final DecodeScheduler lastScheduler = mDecodeScheduler;
+        if (null != lastScheduler) {
+            lastScheduler.close();
+            mDecodeScheduler = null;
+        }
+        final RegionDecoder lastDecoder = mRegionDecoder;
+        if (null != lastDecoder) {
+            lastDecoder.close();
+            mRegionDecoder = null;
+        }
+    }
+
+    private void detachIncrementalSource() {
+        final IncrementalImageSource source = mIncrementalSource;
+        if (null != source) {
+            source.setListener(null);
+            mIncrementalSource = null;
+        }
+        mIncrementalBackend = null;
+    }
+
+    /**
+     * Open decoder once header of image arrives, then make newly arrived rows available
+     */
+    private void onIncrementalSourceChanged(@NonNull IncrementalImageSource source) {
+        if (source != mIncrementalSource) {
+            return;
+        }
+        if (null == mIncrementalBackend) {
+            final IncrementalBackend backend = IncrementalBackend.open(source);
+            if (null == backend) {
+                return;
+            }
+            try {
+                final RegionDecoder regionDecoder = new RegionDecoder(backend);
+                regionDecoder.setAvailableHeight(0);
+                setRegionDecoder(regionDecoder);
+                mIncrementalBackend = backend;
+            } catch (Throwable t) {
+                Log.e(TAG, "setImage(IncrementalImageSource): failed", t);
+                return;
+            }
+        }
+
+        final IncrementalBackend backend = mIncrementalBackend;
+        final DecodeScheduler decodeScheduler = mDecodeScheduler;
+        if (null == decodeScheduler) {
+            return;
+        }
+        decodeScheduler.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                if (backend.refresh()) {
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onIncrementalRowsAvailable(backend);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void onIncrementalRowsAvailable(@NonNull IncrementalBackend backend) {
+        final RegionDecoder regionDecoder = mRegionDecoder;
+        final DecodeScheduler decodeScheduler = mDecodeScheduler;
+        if (backend != mIncrementalBackend || null == regionDecoder || null == decodeScheduler) {
+            return;
+        }
+        // tiles across the last boundary are decoded from incomplete rows
+        decodeScheduler.invalidateRows(regionDecoder.getAvailableHeight());
+        regionDecoder.setAvailableHeight(backend.getAvailableHeight());
+        onRegionChanged();
+        if (backend.isComplete()) {
+            // rows are only estimated while loading, decode everything again from complete data
+            decodeScheduler.invalidateRows(0);
+            decodeScheduler.invalidateOverview();
+            detachIncrementalSource();
         }
     }
 
@@ -190,6 +517,11 @@ public class LongImageView extends View {
 
     @UiThread
     public void setImage(@NonNull File file) {
+        final ImagePreloader.Entry preloaded = ImagePreloader.take(file.getAbsolutePath());
+        if (null != preloaded) {
+            adoptPreloaded(preloaded);
+            return;
+        }
         try {
             setImage(new FileInputStream(file));
         } catch (Throwable t) {
@@ -202,8 +534,208 @@ public class LongImageView extends View {
         setImage(new File(localPath));
     }
 
+    /**
+     * Set how image fits this view before zooming
+     *
+     * @param fitMode one of {@link #FIT_WIDTH}(default), {@link #FIT_HEIGHT} and {@link #FIT_INSIDE}
+     */
+    @UiThread
+    public void setFitMode(@FitMode int fitMode) {
+        if (mFitMode == fitMode) {
+            return;
+        }
+        mFitMode = fitMode;
+        final RegionDecoder regionDecoder = mRegionDecoder;
+        if (null != regionDecoder) {
+            stopAllAnimation();
+            mImageChanged = true;
+            regionDecoder.setFitMode(fitMode);
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    @FitMode
+    public int getFitMode() {
+        return mFitMode;
+    }
+
+    /**
+     * Show a thumb to scrub through very long images, with a minimap of image while dragging
+     *
+     * @param enabled true to enable fast scroll, default false
+     */
+    @UiThread
+    public void setFastScrollEnabled(boolean enabled) {
+        if (enabled == isFastScrollEnabled()) {
+            return;
+        }
+        mFastScroller = enabled ? new FastScroller(getContext(), mFastScrollListener) : null;
+        final DecodeScheduler decodeScheduler = mDecodeScheduler;
+        if (null != decodeScheduler) {
+            decodeScheduler.setScrubbing(false);
+            decodeScheduler.setOverviewEnabled(enabled);
+        }
+        invalidate();
+    }
+
+    public boolean isFastScrollEnabled() {
+        return null != mFastScroller;
+    }
+
+    /**
+     * Set executor to decode tiles on, e.g. a {@link DecodeExecutor} shared by several views
+     *
+     * @param executor executor for decodes, or null to use {@link DecodeExecutor#getDefault()}
+     */
+    @UiThread
+    public void setDecodeExecutor(@Nullable Executor executor) {
+        mDecodeExecutor = executor;
+        updateQualityExecutor();
+        final DecodeScheduler decodeScheduler = mDecodeScheduler;
+        if (null != decodeScheduler) {
+            decodeScheduler.setExecutor(getDecodeExecutor());
+        }
+    }
+
+    @NonNull
+    public Executor getDecodeExecutor() {
+        final Executor executor = mDecodeExecutor;
+        return null != executor ? executor : DecodeExecutor.getDefault();
+    }
+
+    /**
+     * Lower prefetch, decode quality, resolution and concurrency while the device is in power-save
+     * mode, hot, or decoding slowly, and restore them once things calm down
+     *
+     * @param enabled true to adapt quality to device state, default true
+     */
+    @UiThread
+    public void setAdaptiveQualityEnabled(boolean enabled) {
+        if (mAdaptiveQualityEnabled == enabled) {
+            return;
+        }
+        mAdaptiveQualityEnabled = enabled;
+        updateQualityController();
+    }
+
+    public boolean isAdaptiveQualityEnabled() {
+        return mAdaptiveQualityEnabled;
+    }
+
+    /**
+     * Listen to {@link QualityController} only while attached and enabled
+     */
+    private void updateQualityController() {
+        final QualityController controller = mAttached && mAdaptiveQualityEnabled
+                ? QualityController.getInstance(getContext()) : null;
+        if (controller == mQualityController) {
+            return;
+        }
+        if (null != mQualityController) {
+            mQualityController.removeListener(mQualityListener);
+        }
+        mQualityController = controller;
+        if (null != controller) {
+            controller.addListener(mQualityListener);
+        }
+        updateQualityExecutor();
+        final DecodeScheduler decodeScheduler = mDecodeScheduler;
+        if (null != decodeScheduler) {
+            decodeScheduler.setQualityController(controller);
+        }
+    }
+
+    /**
+     * Let the controller limit concurrency of the executor this view decodes on, only while the
+     * view listens to it
+     */
+    private void updateQualityExecutor() {
+        final QualityController controller = mQualityController;
+        final Executor executor = getDecodeExecutor();
+        final DecodeExecutor qualityExecutor = null != controller && executor instanceof DecodeExecutor
+                ? (DecodeExecutor) executor : null;
+        if (qualityExecutor == mQualityExecutor) {
+            return;
+        }
+        if (null != mQualityExecutor) {
+            mQualityExecutor.removeQualityController();
+        }
+        mQualityExecutor = qualityExecutor;
+        if (null != qualityExecutor) {
+            qualityExecutor.addQualityController(controller);
+        }
+    }
+
+    /**
+     * Keep tiles scrolled out of view compressed in memory, so that scrolling back restores them
+     * with a cheap copy instead of decoding them again. Flat content such as screenshots and text
+     * compresses well, photos are kept uncompressed.
+     *
+     * @param bytes max bytes of compressed tiles per view, 0 to disable, default 1/16 of max heap
+     *              and at most 8MB
+     */
+    @UiThread
+    public void setCompressedTileCacheSize(int bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("bytes must not be negative: " + bytes);
+        }
+        if (mCompressedTileCacheSize == bytes) {
+            return;
+        }
+        mCompressedTileCacheSize = bytes;
+        final DecodeScheduler decodeScheduler = mDecodeScheduler;
+        if (null != decodeScheduler) {
+            decodeScheduler.setTileCache(createTileCache());
+        }
+    }
+
+    public int getCompressedTileCacheSize() {
+        return mCompressedTileCacheSize;
+    }
+
+    @Nullable
+    private CompressedTileCache createTileCache() {
+        return mCompressedTileCacheSize > 0 ? new CompressedTileCache(mCompressedTileCacheSize) : null;
+    }
+
+    /**
+     * Keep last rendered frame in a back buffer, so that scrolling at a stable scale only draws the
+     * newly exposed strips instead of all tiles in view.
+     * <p/>
+     * It costs two view-sized ARGB_8888 bitmaps, and pays off mostly when drawing is done in
+     * software (e.g. {@link View#LAYER_TYPE_SOFTWARE}), since a hardware accelerated canvas
+     * uploads the buffer on every frame.
+     *
+     * @param enabled true to enable back buffer, default false
+     */
+    @UiThread
+    public void setScrollBlitEnabled(boolean enabled) {
+        if (enabled == isScrollBlitEnabled()) {
+            return;
+        }
+        if (enabled) {
+            mScrollBlitter = new ScrollBlitter();
+        } else {
+            mScrollBlitter.release();
+            mScrollBlitter = null;
+        }
+        invalidate();
+    }
+
+    public boolean isScrollBlitEnabled() {
+        return null != mScrollBlitter;
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        final FastScroller fastScroller = mFastScroller;
+        final RegionDecoder regionDecoder = mRegionDecoder;
+        if (null != fastScroller && null != regionDecoder && !mImageChanged
+                && fastScroller.onTouchEvent(event, regionDecoder, mViewPort)) {
+            return true;
+        }
+
         int action = event.getActionMasked();
         if (action == MotionEvent.ACTION_POINTER_UP) {
             mPointerUpTime = event.getEventTime();
@@ -244,24 +776,88 @@ public class LongImageView extends View {
         if (regionDecoder != null) {
             regionDecoder.setDisplayRect(mViewPort);
         }
+        final DecodeScheduler decodeScheduler = mDecodeScheduler;
+        if (decodeScheduler != null) {
+            decodeScheduler.onRegionChanged();
+        }
         mImageChanged = false;
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttached = true;
+        updateQualityController();
+        final ImagePreloader.Source detachedSource = mDetachedSource;
+        if (null != detachedSource) {
+            openInBackground(detachedSource);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mAttached = false;
+        updateQualityController();
+        // do not keep an image which may never be shown, nor keep this view from being collected
+        final ImagePreloader.Entry pendingPreload = mPendingPreload;
+        if (null != pendingPreload) {
+            mPendingPreload = null;
+            pendingPreload.release();
+            mDetachedSource = pendingPreload.getSource();
+        }
+        final ScrollBlitter scrollBlitter = mScrollBlitter;
+        if (null != scrollBlitter) {
+            scrollBlitter.release();
+        }
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
         final RegionDecoder regionDecoder = mRegionDecoder;
-        if (regionDecoder != null) {
-            Bitmap bitmap = regionDecoder.getBitmap();
+        final DecodeScheduler decodeScheduler = mDecodeScheduler;
+        if (regionDecoder != null && decodeScheduler != null) {
             regionDecoder.saveCurrentRegion(mBitmapRegion);
-            mBitmapRegion.offsetTo(0, 0);
+            if (mBitmapRegion.isEmpty()) {
+                return;
+            }
 
-            if (bitmap != null) {
-                canvas.drawBitmap(bitmap, mBitmapRegion, mViewPort, null);
+            final ScrollBlitter scrollBlitter = mScrollBlitter;
+            if (null != scrollBlitter) {
+                scrollBlitter.draw(canvas, mViewPort, mBitmapRegion, decodeScheduler, mTilePaint);
+            } else {
+                // tiles are drawn in image coordinates
+                final int saveCount = canvas.save();
+                canvas.scale((float) mViewPort.width() / mBitmapRegion.width(), (float) mViewPort.height() / mBitmapRegion.height());
+                canvas.translate(-mBitmapRegion.left, -mBitmapRegion.top);
+                decodeScheduler.drawTiles(canvas, mBitmapRegion, mTilePaint);
+                canvas.restoreToCount(saveCount);
+            }
+
+            final FastScroller fastScroller = mFastScroller;
+            if (null != fastScroller) {
+                fastScroller.draw(canvas, regionDecoder, decodeScheduler.getOverview(), mViewPort);
             }
         }
     }
 
+    /**
+     * Redraw with current region and let {@link DecodeScheduler} schedule tiles for it
+     */
+    private void onRegionChanged() {
+        invalidate();
+        final DecodeScheduler decodeScheduler = mDecodeScheduler;
+        if (null != decodeScheduler) {
+            decodeScheduler.onRegionChanged();
+        }
+    }
+
+    private float getRefreshRate() {
+        final WindowManager windowManager = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
+        return null == windowManager ? 0 : windowManager.getDefaultDisplay().getRefreshRate();
+    }
+
     protected boolean handlePointerUp(MotionEvent event) {
         final RegionDecoder regionDecoder = mRegionDecoder;
         if (!mImageChanged && null != regionDecoder && regionDecoder.isZoomedOut() && event.getPointerCount() == 0) {
@@ -272,6 +868,7 @@ public class LongImageView extends View {
             mRegionAnimator.setDuration(DEFAULT_DURATION);
             mRegionAnimator.setObjectValues(mStartRect, mTargetRect);
             mRegionAnimator.start();
+            setZooming(true);
             return true;
         }
         return false;
@@ -281,6 +878,18 @@ public class LongImageView extends View {
         mRegionAnimator.cancel();
     }
 
+    /**
+     * Keep drawing decoded tiles during zooming instead of decoding tiles on every scale change
+     *
+     * @param zooming true if a zoom gesture or animation is in progress
+     */
+    private void setZooming(boolean zooming) {
+        final DecodeScheduler decodeScheduler = mDecodeScheduler;
+        if (null != decodeScheduler) {
+            decodeScheduler.setZooming(zooming);
+        }
+    }
+
     private boolean onFling(
             @NonNull MotionEvent e1,
             @NonNull MotionEvent e2,
@@ -303,9 +912,18 @@ public class LongImageView extends View {
         mTargetRect.offset(-regionDecoder.getScaled(distanceX), -regionDecoder.getScaled(distanceY));
         mRegionAnimator.setDuration(duration);
         mRegionAnimator.start();
+        final DecodeScheduler decodeScheduler = mDecodeScheduler;
+        if (null != decodeScheduler) {
+            decodeScheduler.setFlinging(true);
+        }
         return true;
     }
 
+    @IntDef({FIT_WIDTH, FIT_HEIGHT, FIT_INSIDE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface FitMode {
+    }
+
     private class GestureListener extends GestureDetector.SimpleOnGestureListener {
         @Override
         public boolean onDown(MotionEvent e) {
@@ -332,7 +950,7 @@ public class LongImageView extends View {
             }
             final boolean scrolled = regionDecoder.scrollByUnscaled(distanceX, distanceY);
             if (scrolled) {
-                invalidate();
+                onRegionChanged();
             }
             return scrolled;
         }
@@ -386,6 +1004,7 @@ public class LongImageView extends View {
             mRegionAnimator.setDuration(300L);
             mRegionAnimator.setObjectValues(mStartRect, mTargetRect);
             mRegionAnimator.start();
+            setZooming(true);
             return true;
         }
     }
@@ -401,11 +1020,19 @@ public class LongImageView extends View {
                 return false;
             }
 
+            // stop animation before zooming starts, otherwise its end would also end zooming
+            stopAllAnimation();
             targetPivotX = regionDecoder.transformXCoordinate(detector.getFocusX());
             targetPivotY = regionDecoder.transformYCoordinate(detector.getFocusY());
+            setZooming(true);
             return true;
         }
 
+        @Override
+        public void onScaleEnd(ScaleGestureDetector detector) {
+            setZooming(false);
+        }
+
         @Override
         public boolean onScale(ScaleGestureDetector detector) {
             final RegionDecoder regionDecoder = mRegionDecoder;
@@ -421,7 +1048,7 @@ public class LongImageView extends View {
                         regionDecoder.fixPivotX(targetPivotX, targetScale),
                         regionDecoder.fixPivotY(targetPivotY, targetScale)
                 );
-                invalidate();
+                onRegionChanged();
                 return true;
             }
             return false;
@@ -0,0 +1,141 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+
+/**
+ * {@link DecoderBackend} which shows an image in its EXIF orientation.
+ * <p/>
+ * Size and regions are in oriented coordinates, so {@link RegionDecoder} and everything above it
+ * never know the image is rotated. A region is mapped back to source coordinates, decoded from the
+ * source as-is, and only the decoded tile is rotated or flipped.
+ */
+class OrientedBackend implements DecoderBackend {
+    private final DecoderBackend mSource;
+    private final int mOrientation;
+    private final Matrix mMatrix = new Matrix();
+
+    private OrientedBackend(@NonNull DecoderBackend source, int orientation) {
+        mSource = source;
+        mOrientation = orientation;
+        switch (orientation) {
+            case Exif.ORIENTATION_FLIP_HORIZONTAL:
+                mMatrix.setScale(-1, 1);
+                break;
+            case Exif.ORIENTATION_ROTATE_180:
+                mMatrix.setRotate(180);
+                break;
+            case Exif.ORIENTATION_FLIP_VERTICAL:
+                mMatrix.setScale(1, -1);
+                break;
+            case Exif.ORIENTATION_TRANSPOSE:
+                mMatrix.setRotate(90);
+                mMatrix.postScale(-1, 1);
+                break;
+            case Exif.ORIENTATION_ROTATE_90:
+                mMatrix.setRotate(90);
+                break;
+            case Exif.ORIENTATION_TRANSVERSE:
+                mMatrix.setRotate(270);
+                mMatrix.postScale(-1, 1);
+                break;
+            case Exif.ORIENTATION_ROTATE_270:
+                mMatrix.setRotate(270);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @param orientation one of {@code Exif.ORIENTATION_*}
+     * @return backend showing source in given orientation, or source itself if no change is needed
+     */
+    static DecoderBackend wrap(@NonNull DecoderBackend source, int orientation) {
+        if (orientation <= Exif.ORIENTATION_NORMAL || orientation > Exif.ORIENTATION_ROTATE_270) {
+            return source;
+        }
+        return new OrientedBackend(source, orientation);
+    }
+
+    /**
+     * Map a rect in oriented coordinates to source coordinates
+     *
+     * @param sourceWidth  width of source image
+     * @param sourceHeight height of source image
+     */
+    static void mapToSource(int orientation, int sourceWidth, int sourceHeight, @NonNull Rect rect, @NonNull Rect outRect) {
+        final int l = rect.left;
+        final int t = rect.top;
+        final int r = rect.right;
+        final int b = rect.bottom;
+        switch (orientation) {
+            case Exif.ORIENTATION_FLIP_HORIZONTAL:
+                outRect.set(sourceWidth - r, t, sourceWidth - l, b);
+                break;
+            case Exif.ORIENTATION_ROTATE_180:
+                outRect.set(sourceWidth - r, sourceHeight - b, sourceWidth - l, sourceHeight - t);
+                break;
+            case Exif.ORIENTATION_FLIP_VERTICAL:
+                outRect.set(l, sourceHeight - b, r, sourceHeight - t);
+                break;
+            case Exif.ORIENTATION_TRANSPOSE:
+                outRect.set(t, l, b, r);
+                break;
+            case Exif.ORIENTATION_ROTATE_90:
+                outRect.set(t, sourceHeight - r, b, sourceHeight - l);
+                break;
+            case Exif.ORIENTATION_TRANSVERSE:
+                outRect.set(sourceWidth - b, sourceHeight - r, sourceWidth - t, sourceHeight - l);
+                break;
+            case Exif.ORIENTATION_ROTATE_270:
+                outRect.set(sourceWidth - b, l, sourceWidth - t, r);
+                break;
+            default:
+                outRect.set(rect);
+                break;
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return Exif.isTransposed(mOrientation) ? mSource.getHeight() : mSource.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return Exif.isTransposed(mOrientation) ? mSource.getWidth() : mSource.getHeight();
+    }
+
+    @Override
+    public int getCapabilities() {
+        // tiles are transformed into new bitmaps
+        return mSource.getCapabilities() & ~CAPABILITY_REUSE_BITMAP;
+    }
+
+    @Override
+    public Bitmap decodeRegion(@NonNull Rect rect, @NonNull BitmapFactory.Options options) {
+        final Rect sourceRect = new Rect();
+        mapToSource(mOrientation, mSource.getWidth(), mSource.getHeight(), rect, sourceRect);
+        final Bitmap decoded = mSource.decodeRegion(sourceRect, options);
+        if (null == decoded) {
+            return null;
+        }
+        final Bitmap oriented;
+        synchronized (mMatrix) {
+            oriented = Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(), decoded.getHeight(), mMatrix, true);
+        }
+        if (oriented != decoded) {
+            decoded.recycle();
+        }
+        return oriented;
+    }
+
+    @Override
+    public void recycle() {
+        mSource.recycle();
+    }
+}
@@ -0,0 +1,85 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link DecoderBackend} backed by the pure-Java {@link PngRegionReader}.
+ * <p/>
+ * It is the last resort for PNG on devices, and lets decoding run on JVM without the platform
+ * decoders. The compressed file is kept in memory.
+ */
+class PngBackend implements DecoderBackend {
+    static final Factory FACTORY = new Factory() {
+        @Override
+        public int getPriority(@NonNull String mimeType) {
+            // after BitmapFactory, which is native
+            return "image/png".equals(mimeType) ? PRIORITY_FALLBACK - 1 : PRIORITY_UNSUPPORTED;
+        }
+
+        @NonNull
+        @Override
+        public DecoderBackend create(@NonNull InputStream is, @NonNull String mimeType) throws IOException {
+            return new PngBackend(is);
+        }
+    };
+    private static final String TAG = "PngBackend";
+    private final PngRegionReader mReader;
+
+    PngBackend(@NonNull InputStream is) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, is.available()));
+        final byte[] buffer = new byte[16 * 1024];
+        int read;
+        while ((read = is.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        mReader = new PngRegionReader(out.toByteArray());
+    }
+
+    @Override
+    public int getWidth() {
+        return mReader.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return mReader.getHeight();
+    }
+
+    @Override
+    public int getCapabilities() {
+        return CAPABILITY_REGION;
+    }
+
+    @Override
+    public Bitmap decodeRegion(@NonNull Rect rect, @NonNull BitmapFactory.Options options) {
+        final Rect clipped = new Rect(rect);
+        if (!clipped.intersect(0, 0, getWidth(), getHeight())) {
+            return null;
+        }
+        final int sampleSize = Math.max(1, options.inSampleSize);
+        try {
+            final int[] pixels = mReader.readRegion(clipped.left, clipped.top, clipped.right, clipped.bottom, sampleSize);
+            final Bitmap.Config config = null != options.inPreferredConfig && !mReader.hasAlpha()
+                    ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+            return Bitmap.createBitmap(pixels,
+                    PngRegionReader.sampledSize(clipped.width(), sampleSize),
+                    PngRegionReader.sampledSize(clipped.height(), sampleSize),
+                    config);
+        } catch (IOException e) {
+            Log.e(TAG, "decodeRegion: failed, " + rect, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void recycle() {
+    }
+}
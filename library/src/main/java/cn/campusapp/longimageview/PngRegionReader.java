@@ -0,0 +1,364 @@
+package cn.campusapp.longimageview;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Pure-Java PNG decoder which streams through scanlines and keeps only the pixels of a region, so
+ * decoding a region takes two rows of memory besides the output, whatever the image size.
+ * <p/>
+ * Rows above the region still have to be inflated, since PNG has no random access, which makes it
+ * slower than {@link android.graphics.BitmapRegionDecoder} for regions far down a long image.
+ * Non-interlaced images of all color types and bit depths are supported, 16-bit samples are reduced
+ * to 8 bits. Instances are immutable and thread safe.
+ * <p/>
+ * This class has no dependency on Android framework, so it also serves JVM tests and benchmarks.
+ */
+class PngRegionReader {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int COLOR_TYPE_GRAY = 0;
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_PALETTE = 3;
+    private static final int COLOR_TYPE_GRAY_ALPHA = 4;
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    private final byte[] mData;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mBitDepth;
+    private final int mColorType;
+    private final int mChannels;
+    /**
+     * Bytes of a row without filter byte
+     */
+    private final int mStride;
+    /**
+     * Bytes of a pixel for filtering, at least 1
+     */
+    private final int mFilterBytes;
+    /**
+     * Offsets and lengths of IDAT chunk data, in pairs
+     */
+    private final int[] mIdat;
+    private final int[] mPalette;
+    /**
+     * Samples of transparent color of gray or RGB image, null if none
+     */
+    private final int[] mTransparent;
+    private final boolean mHasAlpha;
+
+    /**
+     * @param data whole PNG file
+     * @throws IOException if data is not a supported PNG
+     */
+    PngRegionReader(@NonNull byte[] data) throws IOException {
+        mData = data;
+        for (int i = 0; i < SIGNATURE.length; i++) {
+            if (i >= data.length || data[i] != SIGNATURE[i]) {
+                throw new IOException("Not a PNG");
+            }
+        }
+        int width = 0;
+        int height = 0;
+        int bitDepth = 0;
+        int colorType = -1;
+        int[] palette = null;
+        byte[] transparency = null;
+        final ArrayList<Integer> idat = new ArrayList<>();
+        int pos = SIGNATURE.length;
+        while (pos + 8 <= data.length) {
+            final int length = readInt(data, pos);
+            final String type = new String(data, pos + 4, 4, "US-ASCII");
+            final int offset = pos + 8;
+            if (length < 0 || offset + length > data.length) {
+                throw new IOException("Truncated chunk " + type);
+            }
+            switch (type) {
+                case "IHDR":
+                    width = readInt(data, offset);
+                    height = readInt(data, offset + 4);
+                    bitDepth = data[offset + 8];
+                    colorType = data[offset + 9];
+                    if (0 != data[offset + 12]) {
+                        throw new IOException("Interlaced PNG is not supported");
+                    }
+                    break;
+                case "PLTE":
+                    palette = new int[length / 3];
+                    for (int i = 0; i < palette.length; i++) {
+                        final int p = offset + i * 3;
+                        palette[i] = 0xFF000000 | (data[p] & 0xFF) << 16 | (data[p + 1] & 0xFF) << 8 | (data[p + 2] & 0xFF);
+                    }
+                    break;
+                case "tRNS":
+                    transparency = new byte[length];
+                    System.arraycopy(data, offset, transparency, 0, length);
+                    break;
+                case "IDAT":
+                    idat.add(offset);
+                    idat.add(length);
+                    break;
+                default:
+                    break;
+            }
+            if ("IEND".equals(type)) {
+                break;
+            }
+            // skip data and CRC
+            pos = offset + length + 4;
+        }
+
+        switch (colorType) {
+            case COLOR_TYPE_GRAY:
+                mChannels = 1;
+                break;
+            case COLOR_TYPE_RGB:
+                mChannels = 3;
+                break;
+            case COLOR_TYPE_PALETTE:
+                mChannels = 1;
+                if (null == palette) {
+                    throw new IOException("Missing palette");
+                }
+                break;
+            case COLOR_TYPE_GRAY_ALPHA:
+                mChannels = 2;
+                break;
+            case COLOR_TYPE_RGBA:
+                mChannels = 4;
+                break;
+            default:
+                throw new IOException("Unsupported color type " + colorType);
+        }
+        if (width <= 0 || height <= 0 || idat.isEmpty()) {
+            throw new IOException("Invalid PNG, width=" + width + ", height=" + height);
+        }
+        if (bitDepth != 1 && bitDepth != 2 && bitDepth != 4 && bitDepth != 8 && bitDepth != 16) {
+            throw new IOException("Unsupported bit depth " + bitDepth);
+        }
+        mWidth = width;
+        mHeight = height;
+        mBitDepth = bitDepth;
+        mColorType = colorType;
+        mStride = (int) (((long) width * mChannels * bitDepth + 7) / 8);
+        mFilterBytes = Math.max(1, mChannels * bitDepth / 8);
+        mIdat = new int[idat.size()];
+        for (int i = 0; i < mIdat.length; i++) {
+            mIdat[i] = idat.get(i);
+        }
+
+        int[] transparent = null;
+        if (null != transparency && COLOR_TYPE_PALETTE == colorType) {
+            for (int i = 0; i < transparency.length && i < palette.length; i++) {
+                palette[i] = (palette[i] & 0xFFFFFF) | (transparency[i] & 0xFF) << 24;
+            }
+        } else if (null != transparency && (COLOR_TYPE_GRAY == colorType || COLOR_TYPE_RGB == colorType)) {
+            transparent = new int[mChannels];
+            for (int c = 0; c < mChannels && c * 2 + 1 < transparency.length; c++) {
+                transparent[c] = (transparency[c * 2] & 0xFF) << 8 | (transparency[c * 2 + 1] & 0xFF);
+            }
+        }
+        mPalette = palette;
+        mTransparent = transparent;
+        mHasAlpha = COLOR_TYPE_GRAY_ALPHA == colorType || COLOR_TYPE_RGBA == colorType || null != transparency;
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    boolean hasAlpha() {
+        return mHasAlpha;
+    }
+
+    /**
+     * @return size of given size after sampling
+     */
+    static int sampledSize(int size, int sampleSize) {
+        return (size + sampleSize - 1) / sampleSize;
+    }
+
+    /**
+     * Decode a region, keeping one pixel for every {@code sampleSize} pixels on each axis
+     *
+     * @param left       left of region, inclusive
+     * @param top        top of region, inclusive
+     * @param right      right of region, exclusive
+     * @param bottom     bottom of region, exclusive
+     * @param sampleSize sample size, at least 1
+     * @return ARGB pixels, {@link #sampledSize(int, int)} of region width per row
+     * @throws IOException if data is corrupt
+     */
+    @NonNull
+    int[] readRegion(int left, int top, int right, int bottom, int sampleSize) throws IOException {
+        if (left < 0 || top < 0 || right > mWidth || bottom > mHeight || left >= right || top >= bottom || sampleSize < 1) {
+            throw new IllegalArgumentException("Invalid region " + left + "," + top + "," + right + "," + bottom
+                    + " of " + mWidth + "x" + mHeight + ", sampleSize=" + sampleSize);
+        }
+        final int outWidth = sampledSize(right - left, sampleSize);
+        final int outHeight = sampledSize(bottom - top, sampleSize);
+        final int[] out = new int[outWidth * outHeight];
+        final Inflater inflater = new Inflater();
+        try {
+            byte[] previous = new byte[mStride];
+            byte[] current = new byte[mStride];
+            final byte[] filter = new byte[1];
+            int chunk = 0;
+            for (int y = 0; y < bottom; y++) {
+                chunk = inflate(inflater, filter, chunk);
+                chunk = inflate(inflater, current, chunk);
+                unfilter(filter[0], current, previous);
+                if (y >= top && (y - top) % sampleSize == 0) {
+                    final int offset = (y - top) / sampleSize * outWidth;
+                    for (int i = 0; i < outWidth; i++) {
+                        out[offset + i] = pixel(current, left + i * sampleSize);
+                    }
+                }
+                final byte[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt image data", e);
+        } finally {
+            inflater.end();
+        }
+        return out;
+    }
+
+    /**
+     * Fill given buffer with inflated data, feeding IDAT chunks as needed
+     *
+     * @return index of next chunk to feed
+     */
+    private int inflate(Inflater inflater, byte[] buffer, int chunk) throws DataFormatException, IOException {
+        int filled = 0;
+        while (filled < buffer.length) {
+            final int n = inflater.inflate(buffer, filled, buffer.length - filled);
+            filled += n;
+            if (0 == n) {
+                if (!inflater.needsInput() || chunk * 2 >= mIdat.length) {
+                    throw new IOException("Truncated image data");
+                }
+                inflater.setInput(mData, mIdat[chunk * 2], mIdat[chunk * 2 + 1]);
+                chunk++;
+            }
+        }
+        return chunk;
+    }
+
+    private void unfilter(int type, byte[] row, byte[] previous) throws IOException {
+        final int bpp = mFilterBytes;
+        switch (type) {
+            case 0:
+                break;
+            case 1:
+                for (int i = bpp; i < row.length; i++) {
+                    row[i] += row[i - bpp];
+                }
+                break;
+            case 2:
+                for (int i = 0; i < row.length; i++) {
+                    row[i] += previous[i];
+                }
+                break;
+            case 3:
+                for (int i = 0; i < row.length; i++) {
+                    final int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                    row[i] += (a + (previous[i] & 0xFF)) >> 1;
+                }
+                break;
+            case 4:
+                for (int i = 0; i < row.length; i++) {
+                    final int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                    final int b = previous[i] & 0xFF;
+                    final int c = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+                    row[i] += paeth(a, b, c);
+                }
+                break;
+            default:
+                throw new IOException("Unknown filter " + type);
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        final int p = a + b - c;
+        final int pa = Math.abs(p - a);
+        final int pb = Math.abs(p - b);
+        final int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * @return sample of given channel at its own bit depth
+     */
+    private int sample(byte[] row, int x, int channel) {
+        final int index = x * mChannels + channel;
+        switch (mBitDepth) {
+            case 8:
+                return row[index] & 0xFF;
+            case 16:
+                return (row[index * 2] & 0xFF) << 8 | (row[index * 2 + 1] & 0xFF);
+            default:
+                final int bit = index * mBitDepth;
+                final int shift = 8 - mBitDepth - (bit & 7);
+                return (row[bit >> 3] >> shift) & ((1 << mBitDepth) - 1);
+        }
+    }
+
+    /**
+     * @return given sample scaled to 8 bits
+     */
+    private int to8Bits(int sample) {
+        switch (mBitDepth) {
+            case 8:
+                return sample;
+            case 16:
+                return sample >> 8;
+            default:
+                return sample * 255 / ((1 << mBitDepth) - 1);
+        }
+    }
+
+    private int pixel(byte[] row, int x) {
+        switch (mColorType) {
+            case COLOR_TYPE_PALETTE: {
+                final int index = sample(row, x, 0);
+                return index < mPalette.length ? mPalette[index] : 0xFF000000;
+            }
+            case COLOR_TYPE_GRAY: {
+                final int gray = sample(row, x, 0);
+                final int alpha = null != mTransparent && gray == mTransparent[0] ? 0 : 0xFF;
+                return alpha << 24 | to8Bits(gray) * 0x010101;
+            }
+            case COLOR_TYPE_GRAY_ALPHA:
+                return to8Bits(sample(row, x, 1)) << 24 | to8Bits(sample(row, x, 0)) * 0x010101;
+            case COLOR_TYPE_RGB: {
+                final int r = sample(row, x, 0);
+                final int g = sample(row, x, 1);
+                final int b = sample(row, x, 2);
+                final int alpha = null != mTransparent && r == mTransparent[0] && g == mTransparent[1] && b == mTransparent[2] ? 0 : 0xFF;
+                return alpha << 24 | to8Bits(r) << 16 | to8Bits(g) << 8 | to8Bits(b);
+            }
+            default:
+                return to8Bits(sample(row, x, 3)) << 24 | to8Bits(sample(row, x, 0)) << 16
+                        | to8Bits(sample(row, x, 1)) << 8 | to8Bits(sample(row, x, 2));
+        }
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,163 @@
+package cn.campusapp.longimageview;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a PNG row by row, so that an image of any size can be encoded with memory bounded by the
+ * rows passed in at a time.
+ * <p/>
+ * {@link android.graphics.Bitmap#compress(android.graphics.Bitmap.CompressFormat, int, OutputStream)}
+ * needs the whole image in one bitmap, which is exactly what exporting a huge region cannot afford.
+ * This class has no dependency on Android framework.
+ */
+class PngStreamWriter {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_RGBA = 6;
+    private static final int FILTER_SUB = 1;
+    /**
+     * Max size of an IDAT chunk
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final OutputStream mOut;
+    private final int mWidth;
+    private final int mHeight;
+    private final boolean mAlpha;
+    private final int mBytesPerPixel;
+    private final Deflater mDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final CRC32 mCrc = new CRC32();
+    private final byte[] mRow;
+    private final byte[] mChunk = new byte[CHUNK_SIZE];
+    private final byte[] mInt = new byte[4];
+    private int mRowsWritten;
+
+    /**
+     * Write PNG header to given stream
+     *
+     * @param alpha true to keep alpha channel, otherwise pixels are written as opaque RGB
+     */
+    PngStreamWriter(@NonNull OutputStream out, int width, int height, boolean alpha) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+        }
+        mOut = out;
+        mWidth = width;
+        mHeight = height;
+        mAlpha = alpha;
+        mBytesPerPixel = alpha ? 4 : 3;
+        mRow = new byte[1 + width * mBytesPerPixel];
+
+        mOut.write(SIGNATURE);
+        final byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;
+        header[9] = (byte) (alpha ? COLOR_TYPE_RGBA : COLOR_TYPE_RGB);
+        // compression, filter and interlace methods
+        header[10] = 0;
+        header[11] = 0;
+        header[12] = 0;
+        writeChunk("IHDR", header, header.length);
+    }
+
+    /**
+     * Append rows of ARGB pixels
+     *
+     * @param pixels pixels as in {@link android.graphics.Bitmap#getPixels(int[], int, int, int, int, int, int)}
+     * @param stride pixels between the starts of two rows in given array
+     * @param rows   number of rows to append
+     */
+    void writeRows(@NonNull int[] pixels, int stride, int rows) throws IOException {
+        if (mRowsWritten + rows > mHeight) {
+            throw new IllegalStateException("Too many rows, " + (mRowsWritten + rows) + " > " + mHeight);
+        }
+        final int bpp = mBytesPerPixel;
+        for (int y = 0; y < rows; y++) {
+            final int offset = y * stride;
+            mRow[0] = FILTER_SUB;
+            // Sub filter stores difference from the pixel on the left, cheap and good for photos
+            int lastR = 0;
+            int lastG = 0;
+            int lastB = 0;
+            int lastA = 0;
+            for (int x = 0, i = 1; x < mWidth; x++, i += bpp) {
+                final int argb = pixels[offset + x];
+                final int r = (argb >> 16) & 0xFF;
+                final int g = (argb >> 8) & 0xFF;
+                final int b = argb & 0xFF;
+                mRow[i] = (byte) (r - lastR);
+                mRow[i + 1] = (byte) (g - lastG);
+                mRow[i + 2] = (byte) (b - lastB);
+                if (mAlpha) {
+                    final int a = argb >>> 24;
+                    mRow[i + 3] = (byte) (a - lastA);
+                    lastA = a;
+                }
+                lastR = r;
+                lastG = g;
+                lastB = b;
+            }
+            mDeflater.setInput(mRow);
+            while (!mDeflater.needsInput()) {
+                deflate();
+            }
+        }
+        mRowsWritten += rows;
+    }
+
+    /**
+     * Write remaining data and PNG trailer, given stream is not closed
+     */
+    void finish() throws IOException {
+        if (mRowsWritten != mHeight) {
+            throw new IllegalStateException("Missing rows, " + mRowsWritten + " < " + mHeight);
+        }
+        mDeflater.finish();
+        while (!mDeflater.finished()) {
+            deflate();
+        }
+        mDeflater.end();
+        writeChunk("IEND", mChunk, 0);
+        mOut.flush();
+    }
+
+    /**
+     * Release deflater without finishing, e.g. when export is aborted
+     */
+    void abort() {
+        mDeflater.end();
+    }
+
+    private void deflate() throws IOException {
+        final int length = mDeflater.deflate(mChunk, 0, mChunk.length);
+        if (length > 0) {
+            writeChunk("IDAT", mChunk, length);
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        putInt(mInt, 0, length);
+        mOut.write(mInt);
+        final byte[] typeBytes = {(byte) type.charAt(0), (byte) type.charAt(1), (byte) type.charAt(2), (byte) type.charAt(3)};
+        mOut.write(typeBytes);
+        mOut.write(data, 0, length);
+        mCrc.reset();
+        mCrc.update(typeBytes);
+        mCrc.update(data, 0, length);
+        putInt(mInt, 0, (int) mCrc.getValue());
+        mOut.write(mInt);
+    }
+
+    private static void putInt(byte[] b, int offset, int value) {
+        b[offset] = (byte) (value >>> 24);
+        b[offset + 1] = (byte) (value >>> 16);
+        b[offset + 2] = (byte) (value >>> 8);
+        b[offset + 3] = (byte) value;
+    }
+}
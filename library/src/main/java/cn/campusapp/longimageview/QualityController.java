@@ -0,0 +1,287 @@
+package cn.campusapp.longimageview;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+
+/**
+ * QualityController lowers decoding quality when the device is under pressure, and restores it
+ * once things calm down.
+ * <p/>
+ * Pressure is judged from power-save mode, battery temperature (as a proxy of thermal status, which
+ * has no public API before Android Q) and measured tile decode latency. Under pressure:
+ * <ol>
+ * <li>{@link #LEVEL_REDUCED}: less prefetch, speed over quality, half concurrency</li>
+ * <li>{@link #LEVEL_LOW}: no prefetch, speed over quality, doubled sample size, one decode at a time
+ * and at most one tile per frame for each view</li>
+ * </ol>
+ * Each level has a hysteresis band, so that quality does not flip back and forth around a threshold.
+ * <p/>
+ * There is one controller per process, since all signals are global. It only affects views which
+ * enabled adaptive quality, and the {@link DecodeExecutor}s those views decode on.
+ */
+class QualityController {
+    static final int LEVEL_FULL = 0;
+    static final int LEVEL_REDUCED = 1;
+    static final int LEVEL_LOW = 2;
+    /**
+     * Battery temperatures in tenths of a degree Celsius
+     */
+    static final int TEMPERATURE_REDUCED = 420;
+    static final int TEMPERATURE_LOW = 450;
+    static final int TEMPERATURE_HYSTERESIS = 20;
+    /**
+     * Average decode latencies in milliseconds per megapixel of image decoded, so that tiles at a
+     * doubled sample size, which cover 4 times the image, do not look slow by themselves.
+     * They equal 24 and 48ms for a full resolution tile of 256x256, a couple of frames.
+     */
+    static final float LATENCY_REDUCED = 360F;
+    static final float LATENCY_LOW = 720F;
+    static final float LATENCY_HYSTERESIS = 120F;
+    /**
+     * Weight of a new sample in the moving average of decode latency
+     */
+    private static final float LATENCY_SMOOTHING = 0.2F;
+    private static QualityController sInstance;
+
+    private final Context mContext;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * Touched on main thread only
+     */
+    private final ArrayList<Listener> mListeners = new ArrayList<>();
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            synchronized (QualityController.this) {
+                if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+                    mTemperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0);
+                } else {
+                    mPowerSave = isPowerSaveMode();
+                }
+            }
+            update();
+        }
+    };
+    /**
+     * Signals, guarded by this
+     */
+    private boolean mPowerSave;
+    private int mTemperature;
+    private float mLatencyMillis;
+    /**
+     * Written under lock of this, read on any thread
+     */
+    private volatile int mLevel = LEVEL_FULL;
+    /**
+     * Level listeners know about, touched on main thread only
+     */
+    private int mNotifiedLevel = LEVEL_FULL;
+
+    private QualityController(@NonNull Context context) {
+        mContext = context;
+    }
+
+    static synchronized QualityController getInstance(@NonNull Context context) {
+        if (null == sInstance) {
+            sInstance = new QualityController(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Level derived from given signals
+     *
+     * @param currentLevel  level now, used for hysteresis
+     * @param powerSave     whether power-save mode is on
+     * @param temperature   battery temperature in tenths of a degree Celsius
+     * @param latencyMillis average decode latency in milliseconds per megapixel of image
+     */
+    static int computeLevel(int currentLevel, boolean powerSave, int temperature, float latencyMillis) {
+        int level = powerSave ? LEVEL_REDUCED : LEVEL_FULL;
+        level = Math.max(level, levelOf(temperature, currentLevel, TEMPERATURE_REDUCED, TEMPERATURE_LOW, TEMPERATURE_HYSTERESIS));
+        level = Math.max(level, levelOf(latencyMillis, currentLevel, LATENCY_REDUCED, LATENCY_LOW, LATENCY_HYSTERESIS));
+        return level;
+    }
+
+    private static int levelOf(float value, int currentLevel, float reduced, float low, float hysteresis) {
+        if (value >= low || (currentLevel >= LEVEL_LOW && value >= low - hysteresis)) {
+            return LEVEL_LOW;
+        }
+        if (value >= reduced || (currentLevel >= LEVEL_REDUCED && value >= reduced - hysteresis)) {
+            return LEVEL_REDUCED;
+        }
+        return LEVEL_FULL;
+    }
+
+    /**
+     * Limit concurrency of decoding according to current level, may be called on any thread
+     *
+     * @param maxConcurrency concurrency at full quality
+     */
+    int limitConcurrency(int maxConcurrency) {
+        switch (mLevel) {
+            case LEVEL_LOW:
+                return 1;
+            case LEVEL_REDUCED:
+                return Math.max(1, (maxConcurrency + 1) / 2);
+            default:
+                return maxConcurrency;
+        }
+    }
+
+    int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * @param fullRatio prefetch ratio at full quality
+     */
+    float getPrefetchRatio(float fullRatio) {
+        switch (mLevel) {
+            case LEVEL_LOW:
+                return 0;
+            case LEVEL_REDUCED:
+                return fullRatio / 2;
+            default:
+                return fullRatio;
+        }
+    }
+
+    boolean isQualityPreferred() {
+        return mLevel == LEVEL_FULL;
+    }
+
+    /**
+     * @param sampleSize sample size at full quality
+     */
+    int getSampleSize(int sampleSize) {
+        return mLevel == LEVEL_LOW ? sampleSize << 1 : sampleSize;
+    }
+
+    /**
+     * @return true if each view should decode at most one tile per frame
+     */
+    boolean isThrottled() {
+        return mLevel == LEVEL_LOW;
+    }
+
+    /**
+     * @return milliseconds per megapixel of image
+     */
+    static float normalizeLatency(long nanos, long imagePixels) {
+        return imagePixels <= 0 ? 0 : nanos / 1000000F * 1000000F / imagePixels;
+    }
+
+    /**
+     * Report time spent on decoding a tile, may be called on any thread
+     *
+     * @param nanos       time spent
+     * @param imagePixels pixels of image the tile covers, not pixels of the decoded bitmap
+     */
+    void onTileDecoded(long nanos, long imagePixels) {
+        synchronized (this) {
+            final float millis = normalizeLatency(nanos, imagePixels);
+            mLatencyMillis = 0 == mLatencyMillis ? millis : mLatencyMillis + LATENCY_SMOOTHING * (millis - mLatencyMillis);
+        }
+        update();
+    }
+
+    /**
+     * Start watching device state, must be called on main thread
+     */
+    void addListener(@NonNull Listener listener) {
+        if (mListeners.isEmpty()) {
+            final IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+            }
+            // battery status is sticky, so the current one is returned right away
+            final Intent battery = mContext.registerReceiver(mReceiver, filter);
+            synchronized (this) {
+                mTemperature = null == battery ? 0 : battery.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0);
+                mPowerSave = isPowerSaveMode();
+            }
+            update();
+        }
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    /**
+     * Stop watching device state once no one listens, must be called on main thread
+     */
+    void removeListener(@NonNull Listener listener) {
+        if (mListeners.remove(listener) && mListeners.isEmpty()) {
+            mContext.unregisterReceiver(mReceiver);
+            // signals are no longer updated, so do not keep acting on stale ones
+            synchronized (this) {
+                mPowerSave = false;
+                mTemperature = 0;
+                mLatencyMillis = 0;
+                mLevel = LEVEL_FULL;
+            }
+            mNotifiedLevel = LEVEL_FULL;
+        }
+    }
+
+    private boolean isPowerSaveMode() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
+        return isPowerSaveModeV21((PowerManager) mContext.getSystemService(Context.POWER_SERVICE));
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static boolean isPowerSaveModeV21(PowerManager powerManager) {
+        return null != powerManager && powerManager.isPowerSaveMode();
+    }
+
+    private void update() {
+        final int level;
+        synchronized (this) {
+            level = computeLevel(mLevel, mPowerSave, mTemperature, mLatencyMillis);
+            if (level == mLevel) {
+                return;
+            }
+            mLevel = level;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                notifyLevelChanged();
+            }
+        });
+    }
+
+    private void notifyLevelChanged() {
+        final int level = mLevel;
+        if (level == mNotifiedLevel) {
+            return;
+        }
+        mNotifiedLevel = level;
+        for (Listener listener : new ArrayList<>(mListeners)) {
+            listener.onQualityLevelChanged(level);
+        }
+    }
+
+    interface Listener {
+        /**
+         * Called on main thread when quality level changes
+         *
+         * @param level one of {@link #LEVEL_FULL}, {@link #LEVEL_REDUCED} and {@link #LEVEL_LOW}
+         */
+        void onQualityLevelChanged(int level);
+    }
+}
@@ -2,14 +2,15 @@ package cn.campusapp.longimageview;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.BitmapRegionDecoder;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
 import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 
 
 /**
@@ -39,7 +40,18 @@ class RegionDecoder {
      * Default max scale factor
      */
     private static final float MAX_SCALE_FACTOR = 2.0F;
-    private final BitmapFactory.Options mDecodeOptions = new BitmapFactory.Options();
+    /**
+     * Size of a tile in decoded pixels, a tile covers {@code TILE_SIZE * sampleSize} image pixels
+     */
+    static final int TILE_SIZE = 256;
+    /**
+     * Max pixels of overview, the whole image decoded at a large sample size
+     */
+    private static final int OVERVIEW_MAX_PIXELS = 512 * 1024;
+    /**
+     * Max width or height of overview, so that it fits in a texture on most devices
+     */
+    private static final int OVERVIEW_MAX_SIZE = 2048;
     /**
      * Initial decode region
      */
@@ -48,7 +60,7 @@ class RegionDecoder {
      * Current decode region
      */
     private final Rect mRegionRect = new Rect();
-    private final BitmapRegionDecoder mDecoder;
+    private final DecoderBackend mDecoder;
     /**
      * The rect where current image is shown
      */
@@ -77,35 +89,62 @@ class RegionDecoder {
      * Image height in pixels
      */
     private int mImageHeight;
+    /**
+     * Rows of image which can be decoded, less than {@link #mImageHeight} while image is still being loaded
+     */
+    private int mAvailableHeight;
+    /**
+     * How image fits display rect at initial scale
+     */
+    @LongImageView.FitMode
+    private int mFitMode = LongImageView.FIT_WIDTH;
 
     RegionDecoder(InputStream is) throws Exception {
-        if (!is.markSupported()) {
-            is = new BufferedInputStream(is);
-        }
-
-        mDecodeOptions.inPreferredConfig = Bitmap.Config.RGB_565;
-
-        BitmapFactory.Options tmpOptions = new BitmapFactory.Options();
-        tmpOptions.inJustDecodeBounds = true;
-        is.mark(is.available());
-        BitmapFactory.decodeStream(is, null, tmpOptions);
-        is.reset();
+        this(createBackend(is));
+    }
 
-        mImageWidth = tmpOptions.outWidth;
-        mImageHeight = tmpOptions.outHeight;
+    RegionDecoder(@NonNull DecoderBackend backend) throws Exception {
+        mDecoder = backend;
+        mImageWidth = backend.getWidth();
+        mImageHeight = backend.getHeight();
+        mAvailableHeight = mImageHeight;
         if (0 == mImageWidth || 0 == mImageHeight) {
-            throw new Exception("Cannot decode input stream, width=" + mImageWidth + ", height=" + mImageHeight);
+            throw new Exception("Cannot decode image, width=" + mImageWidth + ", height=" + mImageHeight);
+        }
+        mScale = mInitialScale = 1F;
+        mMinScale = mScale * MIN_SCALE_FACTOR;
+        mMaxScale = mScale * MAX_SCALE_FACTOR;
+    }
+
+    private static DecoderBackend createBackend(InputStream is) throws Exception {
+        if (!is.markSupported()) {
+            is = new BufferedInputStream(is);
         }
 
+        final int orientation = readOrientation(is);
         try {
-            mDecoder = BitmapRegionDecoder.newInstance(is, false);
+            return OrientedBackend.wrap(DecoderRegistry.create(is), orientation);
         } catch (Throwable t) {
-            Log.e(TAG, "RegionDecoder: error creating BitmapRegionDecoder", t);
+            Log.e(TAG, "RegionDecoder: error creating decoder", t);
             throw t;
         }
-        mScale = mInitialScale = 1F;
-        mMinScale = mScale * MIN_SCALE_FACTOR;
-        mMaxScale = mScale * MAX_SCALE_FACTOR;
+    }
+
+    /**
+     * Read EXIF orientation from a marked stream, which is reset afterwards
+     *
+     * @return one of {@code Exif.ORIENTATION_*}
+     */
+    private static int readOrientation(InputStream is) throws IOException {
+        is.mark(DecoderRegistry.MARK_LIMIT);
+        try {
+            return Exif.readOrientation(is);
+        } catch (IOException e) {
+            Log.e(TAG, "readOrientation: failed", e);
+            return Exif.ORIENTATION_NORMAL;
+        } finally {
+            is.reset();
+        }
     }
 
     float getMaxScale() {
@@ -132,33 +171,188 @@ class RegionDecoder {
         return isZoomedIn() || isZoomedOut();
     }
 
+    /**
+     * Set how image fits display rect at initial scale, takes effect on next {@link #setDisplayRect(Rect)}
+     *
+     * @param fitMode one of {@link LongImageView#FIT_WIDTH}, {@link LongImageView#FIT_HEIGHT} and
+     *                {@link LongImageView#FIT_INSIDE}
+     */
+    void setFitMode(@LongImageView.FitMode int fitMode) {
+        mFitMode = fitMode;
+    }
+
+    /**
+     * Set display rect and reset current region to initial region
+     *
+     * @param displayRect the rect where current image is shown
+     */
     void setDisplayRect(@NonNull Rect displayRect) {
         mDisplayRect.set(displayRect);
-        int initDisplayWidth = displayRect.width();
-        int initDisplayHeight = displayRect.height();
+        final long displayWidth = displayRect.width();
+        final long displayHeight = displayRect.height();
+        if (displayWidth <= 0 || displayHeight <= 0) {
+            return;
+        }
 
-        mInitialRegionRect.set(0, 0, mImageWidth, initDisplayHeight * mImageWidth / initDisplayWidth);
-        if (mImageHeight / mImageWidth > initDisplayHeight / initDisplayWidth) {
-            mInitialRegionRect.offsetTo(0, 0);
+        // image is relatively wider than display
+        final boolean wider = mImageWidth * displayHeight >= mImageHeight * displayWidth;
+        final boolean fitWidth;
+        switch (mFitMode) {
+            case LongImageView.FIT_HEIGHT:
+                fitWidth = false;
+                break;
+            case LongImageView.FIT_INSIDE:
+                fitWidth = wider;
+                break;
+            case LongImageView.FIT_WIDTH:
+            default:
+                fitWidth = true;
+                break;
+        }
+        if (fitWidth) {
+            mInitialRegionRect.set(0, 0, mImageWidth, (int) (displayHeight * mImageWidth / displayWidth));
         } else {
+            mInitialRegionRect.set(0, 0, (int) (displayWidth * mImageHeight / displayHeight), mImageHeight);
+        }
+
+        // center image on the axis it does not fill, and allow zooming in until it fills that axis
+        mMaxScale = mInitialScale * MAX_SCALE_FACTOR;
+        if (mInitialRegionRect.width() > mImageWidth) {
+            mInitialRegionRect.offsetTo(-(mInitialRegionRect.width() - mImageWidth) / 2, 0);
+            mMaxScale = mInitialScale * mInitialRegionRect.width() / mImageWidth;
+        } else if (mInitialRegionRect.height() > mImageHeight) {
             mInitialRegionRect.offsetTo(0, -(mInitialRegionRect.height() - mImageHeight) / 2);
             mMaxScale = mInitialScale * mInitialRegionRect.height() / mImageHeight;
         }
+        if (mFitMode == LongImageView.FIT_INSIDE) {
+            // a large image shown inside the display can always be zoomed in to one image pixel per display pixel
+            mMaxScale = Math.max(mMaxScale, mInitialScale * mInitialRegionRect.width() / displayWidth);
+        }
+        mScale = mInitialScale;
         mRegionRect.set(mInitialRegionRect);
     }
 
-    Bitmap getBitmap() {
-        try {
-            final int displayWidth = mDisplayRect.width();
-            if (displayWidth == 0) {
-                mDecodeOptions.inSampleSize = 1;
-            } else {
-                mDecodeOptions.inSampleSize = mRegionRect.width() / displayWidth + 1;
+    /**
+     * Sample size to decode current region with
+     *
+     * @return power of 2 sample size
+     */
+    int getSampleSize() {
+        return getSampleSize(mScale);
+    }
+
+    /**
+     * Sample size to decode region of given scale with, the largest power of 2 which keeps
+     * decoded pixels no less than display pixels
+     *
+     * @param scale scale factor
+     * @return power of 2 sample size
+     */
+    int getSampleSize(float scale) {
+        final int displayWidth = mDisplayRect.width();
+        if (displayWidth == 0) {
+            return 1;
+        }
+        final int ratio = (int) (getRegionWidth(scale) / displayWidth);
+        return ratio <= 1 ? 1 : Integer.highestOneBit(ratio);
+    }
+
+    /**
+     * Sample size of overview, the smallest power of 2 which keeps overview small enough
+     *
+     * @return power of 2 sample size
+     */
+    int getOverviewSampleSize() {
+        int sampleSize = 1;
+        while (Math.max(mImageWidth, mImageHeight) / sampleSize > OVERVIEW_MAX_SIZE
+                || (long) (mImageWidth / sampleSize) * (mImageHeight / sampleSize) > OVERVIEW_MAX_PIXELS) {
+            sampleSize <<= 1;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Create a tile which covers the whole image at {@link #getOverviewSampleSize()}
+     */
+    Tile createOverviewTile() {
+        return new Tile(getOverviewSampleSize(), Tile.OVERVIEW_INDEX, Tile.OVERVIEW_INDEX, 0, 0, mImageWidth, mImageHeight);
+    }
+
+    /**
+     * Collect tiles of given sample size which intersect with given region
+     *
+     * @param sampleSize power of 2 sample size
+     * @param region     region in image coordinates
+     * @param outTiles   out param, tiles are appended to it row by row
+     */
+    void collectTiles(int sampleSize, Rect region, List<Tile> outTiles) {
+        final int tileSize = TILE_SIZE * sampleSize;
+        final int left = Math.max(0, region.left);
+        final int top = Math.max(0, region.top);
+        final int right = Math.min(mImageWidth, region.right);
+        final int bottom = Math.min(mAvailableHeight, region.bottom);
+        if (left >= right || top >= bottom) {
+            return;
+        }
+        final int lastCol = (right - 1) / tileSize;
+        final int lastRow = (bottom - 1) / tileSize;
+        for (int row = top / tileSize; row <= lastRow; row++) {
+            for (int col = left / tileSize; col <= lastCol; col++) {
+                outTiles.add(new Tile(sampleSize, col, row,
+                        col * tileSize,
+                        row * tileSize,
+                        Math.min(mImageWidth, (col + 1) * tileSize),
+                        Math.min(mImageHeight, (row + 1) * tileSize)));
             }
-            mDecodeOptions.inPreferQualityOverSpeed = true;
-            return mDecoder.decodeRegion(mRegionRect, mDecodeOptions);
+        }
+    }
+
+    /**
+     * Decode given tile at full quality, may be called on any thread
+     *
+     * @param tile tile to decode
+     * @return decoded bitmap, or null if failed
+     */
+    Bitmap decodeTile(Tile tile) {
+        return decodeTile(tile, true);
+    }
+
+    /**
+     * Decode given tile, may be called on any thread
+     *
+     * @param tile                   tile to decode
+     * @param preferQualityOverSpeed false to decode faster with slightly lower quality
+     * @return decoded bitmap, or null if failed
+     */
+    Bitmap decodeTile(Tile tile, boolean preferQualityOverSpeed) {
+        try {
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            options.inSampleSize = tile.sampleSize;
+            options.inPreferQualityOverSpeed = preferQualityOverSpeed;
+            return mDecoder.decodeRegion(new Rect(tile.left, tile.top, tile.right, tile.bottom), options);
+        } catch (Throwable t) {
+            Log.e(TAG, "decodeTile: failed, " + tile, t);
+            return null;
+        }
+    }
+
+    /**
+     * Decode given region at full color depth, for export, may be called on any thread
+     *
+     * @param rect       region in image coordinates
+     * @param sampleSize power of 2 sample size
+     * @return decoded bitmap, or null if failed
+     */
+    Bitmap decodeRegion(Rect rect, int sampleSize) {
+        try {
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            options.inSampleSize = sampleSize;
+            options.inPreferQualityOverSpeed = true;
+            return mDecoder.decodeRegion(rect, options);
         } catch (Throwable t) {
-            Log.e(TAG, "getBitmap: failed", t);
+            Log.e(TAG, "decodeRegion: failed, " + rect + ", sampleSize=" + sampleSize, t);
             return null;
         }
     }
@@ -193,6 +387,38 @@ class RegionDecoder {
         return translateScaled(_scaled(dx, mScale), _scaled(dy, mScale));
     }
 
+    /**
+     * Scroll to given position along one axis
+     *
+     * @param fraction 0 for the start of image, 1 for the end
+     * @param vertical true for y-axis, false for x-axis
+     * @return true if region is translated, otherwise false
+     */
+    boolean scrollToFraction(float fraction, boolean vertical) {
+        if (vertical) {
+            final float targetTop = fraction * (mAvailableHeight - mRegionRect.height());
+            return translateScaled(0, mRegionRect.top - targetTop);
+        } else {
+            final float targetLeft = fraction * (mImageWidth - mRegionRect.width());
+            return translateScaled(mRegionRect.left - targetLeft, 0);
+        }
+    }
+
+    /**
+     * Position of current region along one axis
+     *
+     * @param vertical true for y-axis, false for x-axis
+     * @return 0 for the start of image, 1 for the end
+     */
+    float getScrollFraction(boolean vertical) {
+        final int range = vertical ? mAvailableHeight - mRegionRect.height() : mImageWidth - mRegionRect.width();
+        if (range <= 0) {
+            return 0;
+        }
+        final int position = vertical ? mRegionRect.top : mRegionRect.left;
+        return Math.min(1F, Math.max(0F, (float) position / range));
+    }
+
     /**
      * Scroll image
      *
@@ -355,7 +581,9 @@ class RegionDecoder {
     }
 
     boolean canScrollX(final float dx) {
-        if (dx > 0) {
+        if (mRegionRect.width() >= mImageWidth) {
+            return false;
+        } else if (dx > 0) {
             return mRegionRect.left > 0;
         } else {
             return mRegionRect.right < mImageWidth;
@@ -363,45 +591,38 @@ class RegionDecoder {
     }
 
     boolean canScrollY(final float dy) {
-        if (dy > 0) {
+        if (mRegionRect.height() >= mAvailableHeight) {
+            return false;
+        } else if (dy > 0) {
             return mRegionRect.top > 0;
         } else {
-            return mRegionRect.bottom < mImageHeight;
+            return mRegionRect.bottom < mAvailableHeight;
         }
     }
 
     private float getFixedScrollX(float dx) {
-        if (mScale >= mInitialScale) {
-            if (mRegionRect.left + dx < 0) {
-                return -mRegionRect.left;
-            } else if (mRegionRect.right + dx > mImageWidth) {
-                return mImageWidth - mRegionRect.right;
-            } else {
-                return dx;
-            }
-        } else {
-            if (mRegionRect.left + dx > 0) {
-                return -mRegionRect.left;
-            } else if (mRegionRect.right + dx < mImageWidth) {
-                return mImageWidth - mRegionRect.right;
-            } else {
-                return dx;
-            }
-        }
+        return getFixedScroll(dx, mRegionRect.left, mRegionRect.right, mImageWidth);
     }
 
     private float getFixedScrollY(float dy) {
-        if (mScale < mInitialScale) {
-            return 0;
-        } else if (mRegionRect.top <= 0 && mRegionRect.bottom >= mImageHeight) { // 纵向已经全部展示
+        return getFixedScroll(dy, mRegionRect.top, mRegionRect.bottom, mAvailableHeight);
+    }
+
+    /**
+     * Fix scroll distance on one axis, so that region stays inside image on that axis
+     *
+     * @param d         scroll distance in image coordinates
+     * @param start     start of current region on that axis
+     * @param end       end of current region on that axis
+     * @param imageSize image size on that axis
+     * @return fixed scroll distance
+     */
+    private static float getFixedScroll(float d, int start, int end, int imageSize) {
+        final int length = end - start;
+        if (length >= imageSize) { // image is fully shown on this axis
             return 0;
-        } else if (mRegionRect.top >= 0 && dy + mRegionRect.top < 0) {
-            return -mRegionRect.top;
-        } else if (mRegionRect.bottom <= mImageHeight && dy + mRegionRect.bottom > mImageHeight) {
-            return mImageHeight - mRegionRect.bottom;
-        } else {
-            return dy;
         }
+        return Math.min(imageSize - length, Math.max(0, start + d)) - start;
     }
 
     int getImageHeight() {
@@ -412,6 +633,19 @@ class RegionDecoder {
         return mImageWidth;
     }
 
+    int getAvailableHeight() {
+        return mAvailableHeight;
+    }
+
+    /**
+     * Limit decoding and vertical scrolling to rows which are available
+     *
+     * @param availableHeight rows of image which can be decoded
+     */
+    void setAvailableHeight(int availableHeight) {
+        mAvailableHeight = Math.max(0, Math.min(mImageHeight, availableHeight));
+    }
+
     void close() {
         if (null != mDecoder) {
             try {
@@ -0,0 +1,137 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Exports any region of a huge image as PNG, e.g. to save or share a crop at full resolution.
+ * <p/>
+ * The region is decoded strip by strip and each strip is streamed into the encoder, so peak memory
+ * is bounded by the strip size, not by the size of the region. EXIF orientation is applied, and
+ * coordinates are those of the image as shown by {@link LongImageView}.
+ * <p/>
+ * Export takes a while for big regions, so call {@link #export(Rect, int, OutputStream)} on a
+ * background thread; interrupting that thread aborts the export.
+ */
+public class RegionExporter {
+    /**
+     * Max pixels of a strip in output
+     */
+    private static final int STRIP_PIXELS = 512 * 1024;
+
+    private final RegionDecoder mRegionDecoder;
+
+    /**
+     * @param is image to export from
+     * @throws Exception if image cannot be decoded
+     */
+    public RegionExporter(@NonNull InputStream is) throws Exception {
+        mRegionDecoder = new RegionDecoder(is);
+    }
+
+    public RegionExporter(@NonNull File file) throws Exception {
+        this(new FileInputStream(file));
+    }
+
+    public int getImageWidth() {
+        return mRegionDecoder.getImageWidth();
+    }
+
+    public int getImageHeight() {
+        return mRegionDecoder.getImageHeight();
+    }
+
+    /**
+     * Export given region as PNG
+     *
+     * @param region     region in image coordinates, clipped to image bounds
+     * @param sampleSize output has one pixel for every {@code sampleSize} pixels on each axis,
+     *                   1 for full resolution
+     * @param out        stream to write PNG to, not closed by this method
+     * @throws IOException if region is empty, decoding fails or writing fails
+     */
+    @WorkerThread
+    public void export(@NonNull Rect region, int sampleSize, @NonNull OutputStream out) throws IOException {
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("sampleSize must be positive: " + sampleSize);
+        }
+        final Rect clipped = new Rect(region);
+        if (!clipped.intersect(0, 0, getImageWidth(), getImageHeight())) {
+            throw new IOException("Region " + region + " is outside image");
+        }
+        final int outWidth = (clipped.width() + sampleSize - 1) / sampleSize;
+        final int outHeight = (clipped.height() + sampleSize - 1) / sampleSize;
+        // decoder only samples at powers of 2, strips are scaled down the rest of the way
+        final int decodeSampleSize = Integer.highestOneBit(sampleSize);
+        final int stripRows = Math.max(1, Math.min(outHeight, STRIP_PIXELS / outWidth));
+        final int[] pixels = new int[outWidth * stripRows];
+        final Rect stripRect = new Rect();
+
+        PngStreamWriter writer = null;
+        try {
+            for (int row = 0; row < outHeight; row += stripRows) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException("Export interrupted");
+                }
+                final int rows = Math.min(stripRows, outHeight - row);
+                stripRect.set(
+                        clipped.left,
+                        clipped.top + row * sampleSize,
+                        clipped.right,
+                        Math.min(clipped.bottom, clipped.top + (row + rows) * sampleSize)
+                );
+                final Bitmap strip = decodeStrip(stripRect, decodeSampleSize, outWidth, rows);
+                try {
+                    if (null == writer) {
+                        writer = new PngStreamWriter(out, outWidth, outHeight, strip.hasAlpha());
+                    }
+                    strip.getPixels(pixels, 0, outWidth, 0, 0, outWidth, rows);
+                } finally {
+                    strip.recycle();
+                }
+                writer.writeRows(pixels, outWidth, rows);
+            }
+            writer.finish();
+            writer = null;
+        } finally {
+            if (null != writer) {
+                writer.abort();
+            }
+        }
+    }
+
+    /**
+     * Decode a strip and scale it to exactly given size
+     */
+    @NonNull
+    private Bitmap decodeStrip(@NonNull Rect rect, int decodeSampleSize, int width, int height) throws IOException {
+        final Bitmap decoded = mRegionDecoder.decodeRegion(rect, decodeSampleSize);
+        if (null == decoded) {
+            throw new IOException("Cannot decode " + rect);
+        }
+        if (decoded.getWidth() == width && decoded.getHeight() == height) {
+            return decoded;
+        }
+        final Bitmap scaled = Bitmap.createScaledBitmap(decoded, width, height, true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * Release decoder, this exporter cannot be used afterwards
+     */
+    public void close() {
+        mRegionDecoder.close();
+    }
+}
@@ -0,0 +1,132 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link DecoderBackend} for formats {@link android.graphics.BitmapRegionDecoder} does not support,
+ * e.g. GIF and BMP.
+ * <p/>
+ * The whole image is decoded once by {@link BitmapFactory}, at a sample size which keeps it within
+ * {@link #MAX_PIXELS}, and regions are cropped from it. Huge images thus lose resolution, which is
+ * the price of supporting them at all. PNG is declined when it would be sampled beyond
+ * {@link #MAX_PNG_SAMPLE_SIZE}, leaving it to the full resolution {@link PngBackend}.
+ */
+class SampledBitmapBackend implements DecoderBackend {
+    static final Factory FACTORY = new Factory() {
+        @Override
+        public int getPriority(@NonNull String mimeType) {
+            // whatever BitmapFactory can decode, after region decoders
+            return mimeType.startsWith("image/") ? PRIORITY_FALLBACK : PRIORITY_UNSUPPORTED;
+        }
+
+        @NonNull
+        @Override
+        public DecoderBackend create(@NonNull InputStream is, @NonNull String mimeType) throws IOException {
+            return new SampledBitmapBackend(is, "image/png".equals(mimeType) ? MAX_PNG_SAMPLE_SIZE : Integer.MAX_VALUE);
+        }
+    };
+    /**
+     * Max pixels of decoded image
+     */
+    private static final int MAX_PIXELS = 2 * 1024 * 1024;
+    /**
+     * Max sample size of PNG, beyond which text of long screenshots is no longer readable
+     */
+    static final int MAX_PNG_SAMPLE_SIZE = 2;
+    private final int mWidth;
+    private final int mHeight;
+    private final Bitmap mBitmap;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * @param maxSampleSize max sample size the image may be decoded at
+     * @throws IOException if the image cannot be decoded, or only beyond max sample size
+     */
+    SampledBitmapBackend(@NonNull InputStream is, int maxSampleSize) throws IOException {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        is.mark(DecoderRegistry.MARK_LIMIT);
+        BitmapFactory.decodeStream(is, null, options);
+        is.reset();
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Cannot decode bounds, width=" + options.outWidth + ", height=" + options.outHeight);
+        }
+        mWidth = options.outWidth;
+        mHeight = options.outHeight;
+
+        final int sampleSize = getSampleSize(mWidth, mHeight);
+        if (sampleSize > maxSampleSize) {
+            throw new IOException("Sample size " + sampleSize + " is beyond " + maxSampleSize + " for " + mWidth + "x" + mHeight);
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        mBitmap = BitmapFactory.decodeStream(is, null, options);
+        if (null == mBitmap) {
+            throw new IOException("Cannot decode image at sample size " + sampleSize);
+        }
+    }
+
+    /**
+     * @return the smallest power of 2 sample size which keeps given image within {@link #MAX_PIXELS}
+     */
+    static int getSampleSize(int width, int height) {
+        int sampleSize = 1;
+        while ((long) (width / sampleSize) * (height / sampleSize) > MAX_PIXELS) {
+            sampleSize <<= 1;
+        }
+        return sampleSize;
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public int getCapabilities() {
+        return 0;
+    }
+
+    @Override
+    public Bitmap decodeRegion(@NonNull Rect rect, @NonNull BitmapFactory.Options options) {
+        final Rect clipped = new Rect(rect);
+        if (!clipped.intersect(0, 0, mWidth, mHeight)) {
+            return null;
+        }
+        final int sampleSize = Math.max(1, options.inSampleSize);
+        final int width = (clipped.width() + sampleSize - 1) / sampleSize;
+        final int height = (clipped.height() + sampleSize - 1) / sampleSize;
+        final Bitmap.Config config = null != options.inPreferredConfig ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, config);
+        // decoded size may be rounded, so scale by actual ratio
+        final float scaleX = (float) mBitmap.getWidth() / mWidth;
+        final float scaleY = (float) mBitmap.getHeight() / mHeight;
+        final Rect source = new Rect(
+                (int) (clipped.left * scaleX),
+                (int) (clipped.top * scaleY),
+                (int) Math.ceil(clipped.right * scaleX),
+                (int) Math.ceil(clipped.bottom * scaleY)
+        );
+        new Canvas(bitmap).drawBitmap(mBitmap, source, new Rect(0, 0, width, height), mPaint);
+        return bitmap;
+    }
+
+    @Override
+    public void recycle() {
+        mBitmap.recycle();
+    }
+}
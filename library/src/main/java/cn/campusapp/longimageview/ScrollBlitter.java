@@ -0,0 +1,180 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+/**
+ * Back buffer which keeps last rendered viewport, so that scrolling at a stable scale only draws
+ * the newly exposed strips.
+ * <p/>
+ * Two view-sized bitmaps are used in turn: on scroll, the front one is copied into the back one
+ * shifted by scroll distance, tiles are drawn only into the exposed strips and the area of newly
+ * published tiles, then the two are swapped. Whenever the scale changes, tiles are drawn directly
+ * and the buffer is rendered again once the scale is stable.
+ */
+class ScrollBlitter {
+    private static final String TAG = "ScrollBlitter";
+
+    private final Paint mCopyPaint = new Paint();
+    private final Canvas mCanvas = new Canvas();
+    private final Rect mLastRegion = new Rect();
+    private final Rect mDirtyRect = new Rect();
+    private final Rect mClipRect = new Rect();
+    private final Rect mClipRegion = new Rect();
+    private Bitmap mFront;
+    private Bitmap mBack;
+    /**
+     * Whether {@link #mFront} holds {@link #mLastRegion}
+     */
+    private boolean mValid;
+
+    ScrollBlitter() {
+        mCopyPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    }
+
+    /**
+     * Content of buffer is outdated, e.g. image is changed
+     */
+    void invalidate() {
+        mValid = false;
+    }
+
+    void release() {
+        mValid = false;
+        if (null != mFront) {
+            mFront.recycle();
+            mFront = null;
+        }
+        if (null != mBack) {
+            mBack.recycle();
+            mBack = null;
+        }
+    }
+
+    /**
+     * Draw given region of image into view port, reusing pixels rendered on last call
+     */
+    void draw(@NonNull Canvas canvas, @NonNull Rect viewPort, @NonNull Rect region,
+              @NonNull DecodeScheduler decodeScheduler, @NonNull Paint paint) {
+        final int width = viewPort.width();
+        final int height = viewPort.height();
+        final boolean hasDirty = decodeScheduler.consumeDirtyRect(mDirtyRect);
+        final boolean stable = region.width() == mLastRegion.width() && region.height() == mLastRegion.height();
+        if (!stable || !ensureBuffers(width, height)) {
+            // zooming, not worth keeping a buffer
+            mValid = false;
+            mLastRegion.set(region);
+            drawDirectly(canvas, viewPort, region, decodeScheduler, paint);
+            return;
+        }
+
+        final float scaleX = (float) width / region.width();
+        final float scaleY = (float) height / region.height();
+        if (!mValid) {
+            mCanvas.setBitmap(mFront);
+            render(width, height, scaleX, scaleY, 0, 0, width, height, region, decodeScheduler, paint);
+        } else {
+            // shift in whole view pixels, so that pixels are copied without resampling
+            final int shiftX = Math.round(mLastRegion.left * scaleX) - Math.round(region.left * scaleX);
+            final int shiftY = Math.round(mLastRegion.top * scaleY) - Math.round(region.top * scaleY);
+            if (Math.abs(shiftX) >= width || Math.abs(shiftY) >= height) {
+                mCanvas.setBitmap(mFront);
+                render(width, height, scaleX, scaleY, 0, 0, width, height, region, decodeScheduler, paint);
+            } else if (shiftX != 0 || shiftY != 0) {
+                mCanvas.setBitmap(mBack);
+                mCanvas.drawBitmap(mFront, shiftX, shiftY, mCopyPaint);
+                if (shiftY > 0) {
+                    render(width, height, scaleX, scaleY, 0, 0, width, shiftY, region, decodeScheduler, paint);
+                } else if (shiftY < 0) {
+                    render(width, height, scaleX, scaleY, 0, height + shiftY, width, height, region, decodeScheduler, paint);
+                }
+                if (shiftX > 0) {
+                    render(width, height, scaleX, scaleY, 0, 0, shiftX, height, region, decodeScheduler, paint);
+                } else if (shiftX < 0) {
+                    render(width, height, scaleX, scaleY, width + shiftX, 0, width, height, region, decodeScheduler, paint);
+                }
+                final Bitmap front = mBack;
+                mBack = mFront;
+                mFront = front;
+            } else {
+                mCanvas.setBitmap(mFront);
+            }
+            if (hasDirty) {
+                // newly published tiles replace placeholders
+                render(width, height, scaleX, scaleY,
+                        (int) Math.floor((mDirtyRect.left - region.left) * scaleX),
+                        (int) Math.floor((mDirtyRect.top - region.top) * scaleY),
+                        (int) Math.ceil((mDirtyRect.right - region.left) * scaleX),
+                        (int) Math.ceil((mDirtyRect.bottom - region.top) * scaleY),
+                        region, decodeScheduler, paint);
+            }
+        }
+        mCanvas.setBitmap(null);
+        mLastRegion.set(region);
+        mValid = true;
+        canvas.drawBitmap(mFront, viewPort.left, viewPort.top, null);
+    }
+
+    /**
+     * Render tiles into given area of the bitmap {@link #mCanvas} is drawing into
+     */
+    private void render(int width, int height, float scaleX, float scaleY, int left, int top, int right, int bottom,
+                        @NonNull Rect region, @NonNull DecodeScheduler decodeScheduler, @NonNull Paint paint) {
+        mClipRect.set(left, top, right, bottom);
+        if (!mClipRect.intersect(0, 0, width, height)) {
+            return;
+        }
+        // only tiles intersecting with the clip need drawing
+        mClipRegion.set(
+                region.left + (int) Math.floor(mClipRect.left / scaleX),
+                region.top + (int) Math.floor(mClipRect.top / scaleY),
+                region.left + (int) Math.ceil(mClipRect.right / scaleX),
+                region.top + (int) Math.ceil(mClipRect.bottom / scaleY)
+        );
+        final int saveCount = mCanvas.save();
+        mCanvas.clipRect(mClipRect);
+        mCanvas.drawColor(0, PorterDuff.Mode.CLEAR);
+        mCanvas.scale(scaleX, scaleY);
+        mCanvas.translate(-region.left, -region.top);
+        decodeScheduler.drawTiles(mCanvas, mClipRegion, paint);
+        mCanvas.restoreToCount(saveCount);
+    }
+
+    private static void drawDirectly(@NonNull Canvas canvas, @NonNull Rect viewPort, @NonNull Rect region,
+                                     @NonNull DecodeScheduler decodeScheduler, @NonNull Paint paint) {
+        final int saveCount = canvas.save();
+        canvas.translate(viewPort.left, viewPort.top);
+        canvas.scale((float) viewPort.width() / region.width(), (float) viewPort.height() / region.height());
+        canvas.translate(-region.left, -region.top);
+        decodeScheduler.drawTiles(canvas, region, paint);
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * @return true if buffers of given size are ready
+     */
+    private boolean ensureBuffers(int width, int height) {
+        if (null != mFront && mFront.getWidth() == width && mFront.getHeight() == height) {
+            return true;
+        }
+        release();
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        try {
+            mFront = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mBack = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            return true;
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, "ensureBuffers: failed, " + width + "x" + height, e);
+            release();
+            return false;
+        }
+    }
+}
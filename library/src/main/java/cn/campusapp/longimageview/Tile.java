@@ -0,0 +1,99 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Bitmap;
+
+/**
+ * A piece of image decoded at a certain sample size.
+ * <p/>
+ * Bounds of a tile are in image pixels, so tiles decoded at different sample sizes can be drawn
+ * with the same transformation.
+ */
+class Tile {
+    /**
+     * Column and row of the overview tile, which covers the whole image
+     */
+    static final int OVERVIEW_INDEX = -1;
+    /**
+     * Sample size this tile is decoded at, always a power of 2
+     */
+    final int sampleSize;
+    /**
+     * Column of this tile in the grid of its sample size
+     */
+    final int col;
+    /**
+     * Row of this tile in the grid of its sample size
+     */
+    final int row;
+    final int left;
+    final int top;
+    final int right;
+    final int bottom;
+    /**
+     * Whether this tile is outside the visible region and only decoded ahead of time
+     */
+    boolean speculative;
+    /**
+     * Whether this tile is decoded from incomplete data and should be decoded again, touched on main thread only
+     */
+    boolean stale;
+    /**
+     * Decoded bitmap, null until decoded or if decoding failed
+     */
+    volatile Bitmap bitmap;
+
+    Tile(int sampleSize, int col, int row, int left, int top, int right, int bottom) {
+        this.sampleSize = sampleSize;
+        this.col = col;
+        this.row = row;
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    static long key(int sampleSize, int col, int row) {
+        return ((long) Integer.numberOfTrailingZeros(sampleSize) << 56) | ((long) col << 28) | row;
+    }
+
+    long key() {
+        return key(sampleSize, col, row);
+    }
+
+    boolean isOverview() {
+        return col == OVERVIEW_INDEX;
+    }
+
+    int width() {
+        return right - left;
+    }
+
+    int height() {
+        return bottom - top;
+    }
+
+    int centerX() {
+        return (left + right) >> 1;
+    }
+
+    int centerY() {
+        return (top + bottom) >> 1;
+    }
+
+    boolean intersects(int left, int top, int right, int bottom) {
+        return this.left < right && left < this.right && this.top < bottom && top < this.bottom;
+    }
+
+    void recycle() {
+        final Bitmap bitmap = this.bitmap;
+        this.bitmap = null;
+        if (null != bitmap) {
+            bitmap.recycle();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Tile{sampleSize=" + sampleSize + ", col=" + col + ", row=" + row + "}";
+    }
+}
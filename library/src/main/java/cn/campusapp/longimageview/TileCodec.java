@@ -0,0 +1,141 @@
+package cn.campusapp.longimageview;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Cheap lossless codec for RGB_565 tiles.
+ * <p/>
+ * Pixels are run-length encoded: a control word with the high bit set is followed by one pixel
+ * repeated {@code control & 0x7FFF} times, otherwise it is followed by {@code control} literal pixels.
+ * Long images are mostly screenshots and text with large flat areas, which shrink a lot this way.
+ * Tiles that would not shrink, such as photos, are stored raw, so encoding never expands a tile by
+ * more than one byte, and decoding is a plain copy either way.
+ * <p/>
+ * All values are little endian. This class has no dependency on Android framework.
+ */
+class TileCodec {
+    private static final byte MODE_RAW = 0;
+    private static final byte MODE_RLE = 1;
+    private static final int MAX_RUN = 0x7FFF;
+    /**
+     * Shortest run worth a control word of its own
+     */
+    private static final int MIN_RUN = 3;
+
+    private TileCodec() {
+    }
+
+    /**
+     * @return size of buffer large enough to encode given number of pixels
+     */
+    static int maxEncodedSize(int count) {
+        // a literal costs one more control word than raw only when it does not follow a run
+        return 1 + count * 2 + 2 * (count / MAX_RUN + 2);
+    }
+
+    /**
+     * Encode pixels into given buffer
+     *
+     * @param pixels pixels to encode
+     * @param count  number of pixels to encode
+     * @param out    buffer of at least {@link #maxEncodedSize(int)} bytes
+     * @return number of bytes written
+     */
+    static int encode(@NonNull short[] pixels, int count, @NonNull byte[] out) {
+        final int rawSize = 1 + count * 2;
+        int pos = 1;
+        int literalStart = 0;
+        int i = 0;
+        // give up RLE as soon as it is not smaller than raw
+        while (i < count && pos < rawSize) {
+            final short pixel = pixels[i];
+            int run = 1;
+            while (i + run < count && run < MAX_RUN && pixels[i + run] == pixel) {
+                run++;
+            }
+            if (run < MIN_RUN) {
+                i += run;
+                continue;
+            }
+            pos = writeLiterals(pixels, literalStart, i, out, pos);
+            pos = writeShort(out, pos, 0x8000 | run);
+            pos = writeShort(out, pos, pixel);
+            i += run;
+            literalStart = i;
+        }
+        if (pos < rawSize) {
+            pos = writeLiterals(pixels, literalStart, count, out, pos);
+        }
+        if (pos < rawSize) {
+            out[0] = MODE_RLE;
+            return pos;
+        }
+
+        out[0] = MODE_RAW;
+        pos = 1;
+        for (int j = 0; j < count; j++) {
+            pos = writeShort(out, pos, pixels[j]);
+        }
+        return pos;
+    }
+
+    /**
+     * Decode pixels
+     *
+     * @param data   encoded data
+     * @param length number of bytes of encoded data
+     * @param out    receives decoded pixels, must be large enough
+     * @return number of decoded pixels
+     */
+    static int decode(@NonNull byte[] data, int length, @NonNull short[] out) {
+        int pos = 1;
+        int count = 0;
+        if (data[0] == MODE_RAW) {
+            while (pos < length) {
+                out[count++] = readShort(data, pos);
+                pos += 2;
+            }
+            return count;
+        }
+        while (pos < length) {
+            final int control = readShort(data, pos) & 0xFFFF;
+            pos += 2;
+            if ((control & 0x8000) != 0) {
+                final short pixel = readShort(data, pos);
+                pos += 2;
+                final int end = count + (control & MAX_RUN);
+                while (count < end) {
+                    out[count++] = pixel;
+                }
+            } else {
+                for (int j = 0; j < control; j++) {
+                    out[count++] = readShort(data, pos);
+                    pos += 2;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int writeLiterals(short[] pixels, int start, int end, byte[] out, int pos) {
+        while (start < end) {
+            final int n = Math.min(MAX_RUN, end - start);
+            pos = writeShort(out, pos, n);
+            for (int j = 0; j < n; j++) {
+                pos = writeShort(out, pos, pixels[start + j]);
+            }
+            start += n;
+        }
+        return pos;
+    }
+
+    private static int writeShort(byte[] out, int pos, int value) {
+        out[pos] = (byte) value;
+        out[pos + 1] = (byte) (value >> 8);
+        return pos + 2;
+    }
+
+    private static short readShort(byte[] data, int pos) {
+        return (short) ((data[pos] & 0xFF) | (data[pos + 1] << 8));
+    }
+}
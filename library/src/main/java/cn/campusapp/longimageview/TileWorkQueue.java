@@ -0,0 +1,121 @@
+package cn.campusapp.longimageview;
+
+import java.util.ArrayList;
+
+/**
+ * Priority queue of tiles waiting to be decoded.
+ * <p/>
+ * Tiles are polled in the following order:
+ * <ol>
+ * <li>visible tiles before speculative ones</li>
+ * <li>coarse tiles before fine ones, so that a placeholder shows up as soon as possible</li>
+ * <li>tiles near the focus (center of current region) before distant ones</li>
+ * </ol>
+ * Priorities are not stored but computed against the focus when polling, so moving the focus
+ * is a single lock-free write no matter how many tiles are queued, and tiles the user has
+ * scrolled away from naturally sink to the end of the queue.
+ * <p/>
+ * This class has no dependency on Android framework and is safe to use from multiple threads.
+ */
+class TileWorkQueue {
+    private final ArrayList<Tile> mTiles = new ArrayList<>();
+    /**
+     * Focus packed into a long, x in high 32 bits and y in low 32 bits
+     */
+    private volatile long mFocus;
+
+    private static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private static int unpackX(long focus) {
+        return (int) (focus >> 32);
+    }
+
+    private static int unpackY(long focus) {
+        return (int) focus;
+    }
+
+    /**
+     * Compare priorities of given tiles
+     *
+     * @return negative if lhs should be decoded before rhs, positive if after, otherwise 0
+     */
+    static int compare(Tile lhs, Tile rhs, int focusX, int focusY) {
+        if (lhs.speculative != rhs.speculative) {
+            return lhs.speculative ? 1 : -1;
+        }
+        if (lhs.sampleSize != rhs.sampleSize) {
+            return lhs.sampleSize > rhs.sampleSize ? -1 : 1;
+        }
+        final long lhsDistance = distanceSquared(lhs, focusX, focusY);
+        final long rhsDistance = distanceSquared(rhs, focusX, focusY);
+        return lhsDistance < rhsDistance ? -1 : (lhsDistance == rhsDistance ? 0 : 1);
+    }
+
+    private static long distanceSquared(Tile tile, int x, int y) {
+        final long dx = tile.centerX() - x;
+        final long dy = tile.centerY() - y;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Move focus of this queue, takes effect on next {@link #poll()}
+     *
+     * @param x x-coordinate of focus in image coordinates
+     * @param y y-coordinate of focus in image coordinates
+     */
+    void setFocus(int x, int y) {
+        mFocus = pack(x, y);
+    }
+
+    int getFocusX() {
+        return unpackX(mFocus);
+    }
+
+    int getFocusY() {
+        return unpackY(mFocus);
+    }
+
+    synchronized void add(Tile tile) {
+        mTiles.add(tile);
+    }
+
+    /**
+     * Retrieve and remove the tile with highest priority
+     *
+     * @return tile with highest priority, or null if this queue is empty
+     */
+    synchronized Tile poll() {
+        final int size = mTiles.size();
+        if (size == 0) {
+            return null;
+        }
+        final long focus = mFocus;
+        final int focusX = unpackX(focus);
+        final int focusY = unpackY(focus);
+        int best = 0;
+        for (int i = 1; i < size; i++) {
+            if (compare(mTiles.get(i), mTiles.get(best), focusX, focusY) < 0) {
+                best = i;
+            }
+        }
+        // order of remaining tiles does not matter, so swap with the last one to remove in O(1)
+        final Tile tile = mTiles.get(best);
+        mTiles.set(best, mTiles.get(size - 1));
+        mTiles.remove(size - 1);
+        return tile;
+    }
+
+    synchronized void clear() {
+        mTiles.clear();
+    }
+
+    synchronized boolean isEmpty() {
+        return mTiles.isEmpty();
+    }
+
+    synchronized int size() {
+        return mTiles.size();
+    }
+}
@@ -0,0 +1,105 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, manifest = Config.NONE)
+public class CompressedTileCacheTest {
+    private static final int TILE_SIZE = 256;
+    private static final int MAX_BYTES = 1024 * 1024;
+
+    /**
+     * A decoded tile of given row, flat so that it compresses well
+     */
+    private static Tile tile(int row, int width, int height) {
+        final Tile tile = new Tile(1, 0, row, 0, row * TILE_SIZE, width, row * TILE_SIZE + height);
+        tile.bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        return tile;
+    }
+
+    private static Tile tile(int row) {
+        return tile(row, TILE_SIZE, TILE_SIZE);
+    }
+
+    @Test
+    public void put_thenGet_restoresBitmapOfOriginalSize() {
+        final CompressedTileCache cache = new CompressedTileCache(MAX_BYTES);
+        // an edge tile, smaller than the others
+        final Tile tile = tile(3, 200, 100);
+        cache.put(tile, cache.getGeneration());
+        assertTrue(cache.size() > 0);
+
+        final Bitmap restored = cache.get(tile(3));
+        assertNotNull(restored);
+        assertEquals(200, restored.getWidth());
+        assertEquals(100, restored.getHeight());
+        assertEquals(Bitmap.Config.RGB_565, restored.getConfig());
+        assertNull(cache.get(tile(4)));
+    }
+
+    @Test
+    public void put_ignoresOtherConfigs() {
+        final CompressedTileCache cache = new CompressedTileCache(MAX_BYTES);
+        final Tile tile = tile(0);
+        tile.bitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        cache.put(tile, cache.getGeneration());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void put_afterInvalidation_isDropped() {
+        final CompressedTileCache cache = new CompressedTileCache(MAX_BYTES);
+        // evicted before the invalidation, so its pixels may be out of date
+        final int generation = cache.getGeneration();
+        cache.invalidateRows(0);
+        cache.put(tile(0), generation);
+        assertNull(cache.get(tile(0)));
+
+        cache.put(tile(0), cache.getGeneration());
+        assertNotNull(cache.get(tile(0)));
+    }
+
+    @Test
+    public void invalidateRows_dropsTilesBelowRow() {
+        final CompressedTileCache cache = new CompressedTileCache(MAX_BYTES);
+        for (int row = 0; row < 4; row++) {
+            cache.put(tile(row), cache.getGeneration());
+        }
+        cache.invalidateRows(2 * TILE_SIZE);
+        assertNotNull(cache.get(tile(0)));
+        assertNotNull(cache.get(tile(1)));
+        assertNull(cache.get(tile(2)));
+        assertNull(cache.get(tile(3)));
+    }
+
+    @Test
+    public void trim_dropsLeastRecentlyUsed() {
+        final CompressedTileCache probe = new CompressedTileCache(MAX_BYTES);
+        probe.put(tile(0), probe.getGeneration());
+        final int tileBytes = probe.size();
+        assertTrue(tileBytes > 0);
+
+        // room for 2 tiles
+        final CompressedTileCache cache = new CompressedTileCache(tileBytes * 2 + tileBytes / 2);
+        cache.put(tile(0), cache.getGeneration());
+        cache.put(tile(1), cache.getGeneration());
+        // touch row 0, so that row 1 is the least recently used
+        assertNotNull(cache.get(tile(0)));
+        cache.put(tile(2), cache.getGeneration());
+
+        assertTrue(cache.size() <= cache.getMaxBytes());
+        assertNotNull(cache.get(tile(0)));
+        assertNull(cache.get(tile(1)));
+        assertNotNull(cache.get(tile(2)));
+    }
+}
@@ -0,0 +1,84 @@
+package cn.campusapp.longimageview;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DecodeExecutorTest {
+
+    @Test
+    public void sharedPool_runsUpToConcurrencyLimit() throws Exception {
+        final ExecutorService appPool = Executors.newFixedThreadPool(8);
+        final DecodeExecutor executor = new DecodeExecutor(appPool, 2);
+        final int count = 200;
+        final CountDownLatch done = new CountDownLatch(count);
+        // the first tasks wait for each other, so they only finish if 2 run at once
+        final CountDownLatch twoRunning = new CountDownLatch(2);
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final int now = running.incrementAndGet();
+                    int max;
+                    while (now > (max = maxRunning.get()) && !maxRunning.compareAndSet(max, now)) {
+                        // retry
+                    }
+                    twoRunning.countDown();
+                    try {
+                        if (!twoRunning.await(5, TimeUnit.SECONDS)) {
+                            timedOut.set(true);
+                        }
+                        Thread.sleep(1);
+                    } catch (InterruptedException ignored) {
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        appPool.shutdown();
+        assertFalse("tasks never ran 2 at once", timedOut.get());
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void failingTask_releasesItsSlot() throws Exception {
+        final ExecutorService appPool = Executors.newSingleThreadExecutor();
+        final DecodeExecutor executor = new DecodeExecutor(appPool, 1);
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("decode failed");
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        appPool.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroConcurrency_throws() {
+        new DecodeExecutor(Executors.newSingleThreadExecutor(), 0);
+    }
+}
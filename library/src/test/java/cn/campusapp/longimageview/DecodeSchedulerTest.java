@@ -0,0 +1,192 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, manifest = Config.NONE)
+public class DecodeSchedulerTest {
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 1920;
+    private static final long FRAME_NANOS = 16666667L;
+    private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+    private final Executor mExecutor = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            if (mRejecting) {
+                throw new RejectedExecutionException("shut down");
+            }
+            mTasks.add(command);
+        }
+    };
+    private long mNowNanos;
+    private boolean mRejecting;
+
+    private DecodeScheduler newScheduler(@NonNull DecoderBackend backend) throws Exception {
+        // frame callbacks are driven by the test instead of the looper
+        ShadowLooper.pauseMainLooper();
+        final RegionDecoder regionDecoder = new RegionDecoder(backend);
+        regionDecoder.setFitMode(LongImageView.FIT_WIDTH);
+        regionDecoder.setDisplayRect(new Rect(0, 0, VIEW_WIDTH, VIEW_HEIGHT));
+        final DecodeScheduler scheduler = new DecodeScheduler(regionDecoder, new DecodeScheduler.Callback() {
+            @Override
+            public void onTilesPublished() {
+            }
+        }, 60F, mExecutor) {
+            @Override
+            long nanoTime() {
+                return mNowNanos;
+            }
+        };
+        scheduler.onRegionChanged();
+        return scheduler;
+    }
+
+    /**
+     * Run all queued decodes, then advance one frame
+     */
+    private void frame(@NonNull DecodeScheduler scheduler) {
+        Runnable task;
+        while (null != (task = mTasks.poll())) {
+            task.run();
+        }
+        mNowNanos += FRAME_NANOS;
+        scheduler.doFrame(mNowNanos);
+    }
+
+    private static long distanceSquared(Rect rect, int x, int y) {
+        final long dx = rect.centerX() - x;
+        final long dy = rect.centerY() - y;
+        return dx * dx + dy * dy;
+    }
+
+    @Test
+    public void tiles_decodedInFocusOrder() throws Exception {
+        final RecordingBackend backend = new RecordingBackend(VIEW_WIDTH, 20000);
+        final DecodeScheduler scheduler = newScheduler(backend);
+        // schedules tiles around the focus, which is the center of the viewport
+        frame(scheduler);
+        Runnable task;
+        while (null != (task = mTasks.poll())) {
+            task.run();
+        }
+
+        final Rect visible = new Rect(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+        final int focusX = visible.centerX();
+        final int focusY = visible.centerY();
+        assertTrue(backend.decoded.size() > 1);
+        boolean speculative = false;
+        long lastDistance = -1;
+        for (Rect rect : backend.decoded) {
+            final boolean isSpeculative = !Rect.intersects(rect, visible);
+            if (isSpeculative && !speculative) {
+                speculative = true;
+                lastDistance = -1;
+            }
+            // visible tiles first, then nearest first within visible and within speculative ones
+            assertFalse("visible tile after speculative ones: " + rect, speculative && !isSpeculative);
+            final long distance = distanceSquared(rect, focusX, focusY);
+            assertTrue("tile decoded out of focus order: " + rect, distance >= lastDistance);
+            lastDistance = distance;
+        }
+        assertTrue(speculative);
+        scheduler.close();
+    }
+
+    @Test
+    public void rejectedDecode_resumesOnceAccepted() throws Exception {
+        final SyntheticBackend backend = new SyntheticBackend(VIEW_WIDTH, 20000);
+        final DecodeScheduler scheduler = newScheduler(backend);
+        mRejecting = true;
+        scheduler.setOverviewEnabled(true);
+        frame(scheduler);
+        frame(scheduler);
+        assertEquals(0, backend.getDecodeCount());
+
+        mRejecting = false;
+        scheduler.setOverviewEnabled(true);
+        frame(scheduler);
+        frame(scheduler);
+        assertTrue(backend.getDecodeCount() > 0);
+        assertTrue(null != scheduler.getOverview());
+        scheduler.close();
+    }
+
+    @Test
+    public void failedTile_notRetriedEveryFrame() throws Exception {
+        final FailingBackend backend = new FailingBackend(1080, 20000);
+        final DecodeScheduler scheduler = newScheduler(backend);
+        for (int i = 0; i < 30; i++) {
+            frame(scheduler);
+        }
+        assertEquals(1, backend.failures);
+        assertTrue(scheduler.getPublishedTiles().size() > 0);
+
+        scheduler.invalidateRows(0);
+        frame(scheduler);
+        frame(scheduler);
+        assertEquals(2, backend.failures);
+
+        // tried again once the backoff is over
+        mNowNanos += 3000000000L;
+        frame(scheduler);
+        frame(scheduler);
+        assertEquals(3, backend.failures);
+        scheduler.close();
+    }
+
+    /**
+     * Records regions in the order they are decoded
+     */
+    private static class RecordingBackend extends SyntheticBackend {
+        final List<Rect> decoded = new ArrayList<>();
+
+        RecordingBackend(int width, int height) {
+            super(width, height);
+        }
+
+        @Override
+        public synchronized Bitmap decodeRegion(@NonNull Rect rect, @NonNull BitmapFactory.Options options) {
+            decoded.add(new Rect(rect));
+            return super.decodeRegion(rect, options);
+        }
+    }
+
+    /**
+     * Fails to decode the top left tile
+     */
+    private static class FailingBackend extends SyntheticBackend {
+        int failures;
+
+        FailingBackend(int width, int height) {
+            super(width, height);
+        }
+
+        @Override
+        public synchronized Bitmap decodeRegion(@NonNull Rect rect, @NonNull BitmapFactory.Options options) {
+            if (0 == rect.left && 0 == rect.top && rect.height() < getHeight()) {
+                failures++;
+                return null;
+            }
+            return super.decodeRegion(rect, options);
+        }
+    }
+}
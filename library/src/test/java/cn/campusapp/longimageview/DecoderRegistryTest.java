@@ -0,0 +1,143 @@
+package cn.campusapp.longimageview;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, manifest = Config.NONE)
+public class DecoderRegistryTest {
+
+    private static String sniff(int... bytes) {
+        final byte[] header = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            header[i] = (byte) bytes[i];
+        }
+        return DecoderRegistry.sniffMimeType(header, header.length);
+    }
+
+    @Test
+    public void sniffMimeType() {
+        assertEquals("image/jpeg", sniff(0xFF, 0xD8, 0xFF, 0xE0));
+        assertEquals("image/png", sniff(0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'));
+        assertEquals("image/gif", sniff('G', 'I', 'F', '8', '9', 'a'));
+        assertEquals("image/webp", sniff('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P'));
+        assertEquals("image/bmp", sniff('B', 'M'));
+        assertEquals("image/heif", sniff(0, 0, 0, 0x18, 'f', 't', 'y', 'p', 'h', 'e', 'i', 'c'));
+        assertEquals("image/avif", sniff(0, 0, 0, 0x18, 'f', 't', 'y', 'p', 'a', 'v', 'i', 'f'));
+        assertNull(sniff(0xFF, 0xD8));
+        assertNull(sniff(0, 0, 0, 0));
+    }
+
+    @Test
+    public void factories_orderedByPriority() {
+        final DecoderBackend.Factory fast = new TestFactory(DecoderBackend.Factory.PRIORITY_NATIVE + 1);
+        final DecoderBackend.Factory same = new TestFactory(DecoderBackend.Factory.PRIORITY_NATIVE);
+        DecoderRegistry.register(fast);
+        DecoderRegistry.register(same);
+        try {
+            final List<DecoderBackend.Factory> factories = DecoderRegistry.getFactories("image/png");
+            assertEquals(fast, factories.get(0));
+            // registered factories go before built-in ones of the same priority
+            assertEquals(same, factories.get(1));
+            assertEquals(BitmapRegionDecoderBackend.FACTORY, factories.get(2));
+            // BitmapFactory goes before the pure-Java decoder, as long as it keeps the image readable
+            assertEquals(SampledBitmapBackend.FACTORY, factories.get(3));
+            assertEquals(PngBackend.FACTORY, factories.get(4));
+            assertEquals(5, factories.size());
+
+            assertEquals(3, DecoderRegistry.getFactories("image/gif").size());
+        } finally {
+            DecoderRegistry.unregister(fast);
+            DecoderRegistry.unregister(same);
+        }
+        assertEquals(3, DecoderRegistry.getFactories("image/png").size());
+    }
+
+    @Test
+    public void sampledPng_onlyWhileReadable() {
+        assertEquals(1, SampledBitmapBackend.getSampleSize(1080, 1920));
+        assertTrue(SampledBitmapBackend.getSampleSize(1080, 7000) <= SampledBitmapBackend.MAX_PNG_SAMPLE_SIZE);
+        // a long screenshot would be 270px wide, so it is left to PngBackend
+        assertEquals(4, SampledBitmapBackend.getSampleSize(1080, 30000));
+        assertTrue(SampledBitmapBackend.getSampleSize(1080, 30000) > SampledBitmapBackend.MAX_PNG_SAMPLE_SIZE);
+    }
+
+    @Test
+    public void failedFactory_readingPastAvailable_nextFactoryGetsWholeStream() throws IOException {
+        final byte[] png = new byte[4096];
+        final byte[] magic = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+        System.arraycopy(magic, 0, png, 0, magic.length);
+        final DecoderBackend.Factory greedy = new TestFactory(DecoderBackend.Factory.PRIORITY_NATIVE + 2) {
+            @NonNull
+            @Override
+            public DecoderBackend create(@NonNull InputStream is, @NonNull String mimeType) throws IOException {
+                while (is.read() >= 0) {
+                    // consume the whole image, as a decoder failing at its end would
+                }
+                return super.create(is, mimeType);
+            }
+        };
+        final SyntheticBackend backend = new SyntheticBackend(1, 1);
+        final DecoderBackend.Factory accepting = new TestFactory(DecoderBackend.Factory.PRIORITY_NATIVE + 1) {
+            @NonNull
+            @Override
+            public DecoderBackend create(@NonNull InputStream is, @NonNull String mimeType) throws IOException {
+                int length = 0;
+                while (is.read() >= 0) {
+                    length++;
+                }
+                assertEquals(png.length, length);
+                return backend;
+            }
+        };
+        DecoderRegistry.register(greedy);
+        DecoderRegistry.register(accepting);
+        try {
+            // a stream which claims little is available, behind a small buffer
+            final InputStream is = new BufferedInputStream(new FilterInputStream(new ByteArrayInputStream(png)) {
+                @Override
+                public int available() {
+                    return 1;
+                }
+            }, 64);
+            assertEquals(backend, DecoderRegistry.create(is));
+        } finally {
+            DecoderRegistry.unregister(greedy);
+            DecoderRegistry.unregister(accepting);
+        }
+    }
+
+    private static class TestFactory implements DecoderBackend.Factory {
+        private final int mPriority;
+
+        TestFactory(int priority) {
+            mPriority = priority;
+        }
+
+        @Override
+        public int getPriority(@NonNull String mimeType) {
+            return mPriority;
+        }
+
+        @NonNull
+        @Override
+        public DecoderBackend create(@NonNull InputStream is, @NonNull String mimeType) throws IOException {
+            throw new IOException("Not meant to decode");
+        }
+    }
+}
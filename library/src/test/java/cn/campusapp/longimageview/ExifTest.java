@@ -0,0 +1,120 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, manifest = Config.NONE)
+public class ExifTest {
+
+    /**
+     * JPEG header with an APP1 segment holding given orientation in IFD0
+     */
+    private static byte[] jpeg(int orientation, boolean littleEndian) {
+        final ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        writeBytes(tiff, littleEndian ? "II" : "MM");
+        writeShort(tiff, 42, littleEndian);
+        writeInt(tiff, 8, littleEndian);
+        writeShort(tiff, 2, littleEndian);
+        // ImageWidth, then Orientation
+        writeShort(tiff, 0x0100, littleEndian);
+        writeShort(tiff, 3, littleEndian);
+        writeInt(tiff, 1, littleEndian);
+        writeShort(tiff, 4000, littleEndian);
+        writeShort(tiff, 0, littleEndian);
+        writeShort(tiff, 0x0112, littleEndian);
+        writeShort(tiff, 3, littleEndian);
+        writeInt(tiff, 1, littleEndian);
+        writeShort(tiff, orientation, littleEndian);
+        writeShort(tiff, 0, littleEndian);
+        writeInt(tiff, 0, littleEndian);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeShort(out, 0xFFD8, false);
+        // an APP0 segment before EXIF
+        writeShort(out, 0xFFE0, false);
+        writeShort(out, 2 + 5, false);
+        writeBytes(out, "JFIF\0");
+        writeShort(out, 0xFFE1, false);
+        writeShort(out, 2 + 6 + tiff.size(), false);
+        writeBytes(out, "Exif\0\0");
+        out.write(tiff.toByteArray(), 0, tiff.size());
+        writeShort(out, 0xFFDA, false);
+        return out.toByteArray();
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            out.write(s.charAt(i));
+        }
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value, boolean littleEndian) {
+        if (littleEndian) {
+            out.write(value & 0xFF);
+            out.write((value >> 8) & 0xFF);
+        } else {
+            out.write((value >> 8) & 0xFF);
+            out.write(value & 0xFF);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value, boolean littleEndian) {
+        writeShort(out, littleEndian ? value & 0xFFFF : value >>> 16, littleEndian);
+        writeShort(out, littleEndian ? value >>> 16 : value & 0xFFFF, littleEndian);
+    }
+
+    @Test
+    public void readsOrientation_bothByteOrders() throws IOException {
+        for (int orientation = Exif.ORIENTATION_NORMAL; orientation <= Exif.ORIENTATION_ROTATE_270; orientation++) {
+            assertEquals(orientation, Exif.readOrientation(new ByteArrayInputStream(jpeg(orientation, true))));
+            assertEquals(orientation, Exif.readOrientation(new ByteArrayInputStream(jpeg(orientation, false))));
+        }
+    }
+
+    @Test
+    public void notJpeg_isNormal() throws IOException {
+        final byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+        assertEquals(Exif.ORIENTATION_NORMAL, Exif.readOrientation(new ByteArrayInputStream(png)));
+    }
+
+    @Test
+    public void truncatedHeader_isNormal() throws IOException {
+        final byte[] full = jpeg(Exif.ORIENTATION_ROTATE_90, false);
+        final byte[] truncated = new byte[20];
+        System.arraycopy(full, 0, truncated, 0, truncated.length);
+        assertEquals(Exif.ORIENTATION_NORMAL, Exif.readOrientation(new ByteArrayInputStream(truncated)));
+    }
+
+    @Test
+    public void mapToSource_rotate90() {
+        // a 400x300 source shown rotated clockwise is 300x400, its top-left corner is source's bottom-left
+        final Rect out = new Rect();
+        OrientedBackend.mapToSource(Exif.ORIENTATION_ROTATE_90, 400, 300, new Rect(0, 0, 100, 50), out);
+        assertEquals(new Rect(0, 200, 50, 300), out);
+    }
+
+    @Test
+    public void mapToSource_coversWholeSource() {
+        final int width = 400;
+        final int height = 300;
+        final Rect out = new Rect();
+        for (int orientation = Exif.ORIENTATION_NORMAL; orientation <= Exif.ORIENTATION_ROTATE_270; orientation++) {
+            final Rect oriented = Exif.isTransposed(orientation)
+                    ? new Rect(0, 0, height, width)
+                    : new Rect(0, 0, width, height);
+            OrientedBackend.mapToSource(orientation, width, height, oriented, out);
+            assertEquals("orientation " + orientation, new Rect(0, 0, width, height), out);
+        }
+    }
+}
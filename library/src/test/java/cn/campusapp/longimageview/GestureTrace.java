@@ -0,0 +1,160 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.RectF;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A scripted sequence of gestures to replay with {@link PerfHarness}.
+ * <p/>
+ * Gestures drive {@link RegionDecoder} and {@link DecodeScheduler} the same way {@link LongImageView}
+ * does for the corresponding touch events, one region change per frame. Distances are in view pixels
+ * and follow the finger, so a negative dy moves towards the bottom of image.
+ */
+class GestureTrace {
+    private final String mName;
+    private final List<Step> mSteps = new ArrayList<>();
+
+    GestureTrace(String name) {
+        mName = name;
+    }
+
+    /**
+     * Decelerating progress of an animation, same as {@link android.view.animation.DecelerateInterpolator}
+     */
+    private static float decelerate(float input) {
+        return 1F - (1F - input) * (1F - input);
+    }
+
+    private static void animateRegion(PerfHarness harness, RectF start, RectF target, int frames) {
+        final RectF intermediate = new RectF();
+        for (int i = 1; i <= frames; i++) {
+            final float fraction = decelerate((float) i / frames);
+            intermediate.set(
+                    start.left + (target.left - start.left) * fraction,
+                    start.top + (target.top - start.top) * fraction,
+                    start.right + (target.right - start.right) * fraction,
+                    start.bottom + (target.bottom - start.bottom) * fraction
+            );
+            harness.regionDecoder.updateRegion(intermediate);
+            harness.scheduler.onRegionChanged();
+            harness.frame();
+        }
+    }
+
+    String getName() {
+        return mName;
+    }
+
+    List<Step> getSteps() {
+        return Collections.unmodifiableList(mSteps);
+    }
+
+    /**
+     * Do nothing for given frames, lets pending decodes finish
+     */
+    GestureTrace idle(final int frames) {
+        mSteps.add(new Step() {
+            @Override
+            public void replay(PerfHarness harness) {
+                for (int i = 0; i < frames; i++) {
+                    harness.frame();
+                }
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Drag by given distance, see {@link LongImageView}'s onScroll
+     */
+    GestureTrace scroll(final float dx, final float dy, final int frames) {
+        mSteps.add(new Step() {
+            @Override
+            public void replay(PerfHarness harness) {
+                for (int i = 0; i < frames; i++) {
+                    if (harness.regionDecoder.scrollByUnscaled(dx / frames, dy / frames)) {
+                        harness.scheduler.onRegionChanged();
+                    }
+                    harness.frame();
+                }
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Fling by given distance, see {@link LongImageView}'s onFling
+     */
+    GestureTrace fling(final float dx, final float dy, final int frames) {
+        mSteps.add(new Step() {
+            @Override
+            public void replay(PerfHarness harness) {
+                final RegionDecoder regionDecoder = harness.regionDecoder;
+                final RectF start = new RectF();
+                regionDecoder.saveCurrentRegion(start);
+                final RectF target = new RectF(start);
+                target.offset(-regionDecoder.getScaled(dx), -regionDecoder.getScaled(dy));
+                harness.scheduler.setFlinging(true);
+                animateRegion(harness, start, target, frames);
+                harness.scheduler.setFlinging(false);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Pinch around the center of view, see {@link LongImageView}'s ScaleListener
+     *
+     * @param scaleFactor total scale factor of the gesture
+     */
+    GestureTrace pinch(final float scaleFactor, final int frames) {
+        mSteps.add(new Step() {
+            @Override
+            public void replay(PerfHarness harness) {
+                final RegionDecoder regionDecoder = harness.regionDecoder;
+                final float pivotX = regionDecoder.transformXCoordinate(PerfHarness.VIEW_WIDTH / 2F);
+                final float pivotY = regionDecoder.transformYCoordinate(PerfHarness.VIEW_HEIGHT / 2F);
+                final float startScale = regionDecoder.getScale();
+                harness.scheduler.setZooming(true);
+                for (int i = 1; i <= frames; i++) {
+                    final float targetScale = startScale * (float) Math.pow(scaleFactor, (float) i / frames);
+                    regionDecoder.scale(targetScale,
+                            regionDecoder.fixPivotX(pivotX, targetScale),
+                            regionDecoder.fixPivotY(pivotY, targetScale));
+                    harness.scheduler.onRegionChanged();
+                    harness.frame();
+                }
+                harness.scheduler.setZooming(false);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Double tap at given position, see {@link LongImageView}'s onDoubleTap
+     */
+    GestureTrace doubleTap(final float x, final float y, final int frames) {
+        mSteps.add(new Step() {
+            @Override
+            public void replay(PerfHarness harness) {
+                final RegionDecoder regionDecoder = harness.regionDecoder;
+                final RectF start = new RectF();
+                final RectF target = new RectF();
+                regionDecoder.saveCurrentRegion(start);
+                final float targetScale = regionDecoder.isZoomed() ? regionDecoder.getInitialScale() : regionDecoder.getMaxScale();
+                regionDecoder.predicateTargetRegion(targetScale, x, y, target);
+                harness.scheduler.setZooming(true);
+                animateRegion(harness, start, target, frames);
+                harness.scheduler.setZooming(false);
+            }
+        });
+        return this;
+    }
+
+    interface Step {
+        void replay(PerfHarness harness);
+    }
+}
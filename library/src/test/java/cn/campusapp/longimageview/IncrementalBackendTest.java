@@ -0,0 +1,28 @@
+package cn.campusapp.longimageview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalBackendTest {
+
+    @Test
+    public void estimateAvailableHeight_staysBehindByteRatio() {
+        assertEquals(0, IncrementalBackend.estimateAvailableHeight(500, -1, 1000, true));
+        assertEquals(0, IncrementalBackend.estimateAvailableHeight(500, 1000, 1000, false));
+        final int rows = IncrementalBackend.estimateAvailableHeight(500, 1000, 1000, true);
+        assertTrue("rows " + rows, rows > 0 && rows < 500);
+        assertEquals(1000, IncrementalBackend.estimateAvailableHeight(1000, 1000, 1000, true));
+    }
+
+    @Test
+    public void shouldRefresh_growsGeometrically() {
+        assertFalse(IncrementalBackend.shouldRefresh(32 * 1024, 0));
+        assertTrue(IncrementalBackend.shouldRefresh(64 * 1024, 0));
+        // 64KB more is not enough once the decoder is built from 10MB
+        assertFalse(IncrementalBackend.shouldRefresh(10 * 1024 * 1024 + 64 * 1024, 10 * 1024 * 1024));
+        assertTrue(IncrementalBackend.shouldRefresh(15 * 1024 * 1024, 10 * 1024 * 1024));
+    }
+}
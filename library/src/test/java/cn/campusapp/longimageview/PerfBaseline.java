@@ -0,0 +1,54 @@
+package cn.campusapp.longimageview;
+
+import java.io.InputStream;
+import java.util.Properties;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Checks {@link PerfHarness.Metrics} against the stored baseline in {@code perf-baseline.properties}.
+ * <p/>
+ * A metric going past its baseline fails the test. When a change makes a metric better (or
+ * intentionally worse), update the baseline with the measured lines in the failure message.
+ */
+class PerfBaseline {
+    private static final String RESOURCE = "/perf-baseline.properties";
+    private static Properties sBaseline;
+
+    private static synchronized Properties load() throws Exception {
+        if (null == sBaseline) {
+            sBaseline = new Properties();
+            final InputStream is = PerfBaseline.class.getResourceAsStream(RESOURCE);
+            if (null == is) {
+                throw new IllegalStateException("Missing " + RESOURCE);
+            }
+            try {
+                sBaseline.load(is);
+            } finally {
+                is.close();
+            }
+        }
+        return sBaseline;
+    }
+
+    static void check(String traceName, PerfHarness.Metrics metrics) throws Exception {
+        final Properties baseline = load();
+        final String[] names = metrics.names();
+        final long[] values = metrics.values();
+        final StringBuilder measured = new StringBuilder();
+        final StringBuilder failures = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            final String key = traceName + "." + names[i];
+            measured.append(key).append('=').append(values[i]).append('\n');
+            final String stored = baseline.getProperty(key);
+            if (null == stored) {
+                failures.append("no baseline for ").append(key).append('\n');
+            } else if (values[i] > Long.parseLong(stored.trim())) {
+                failures.append(key).append(" went past baseline: ").append(values[i]).append(" > ").append(stored.trim()).append('\n');
+            }
+        }
+        if (failures.length() > 0) {
+            fail(failures + "measured:\n" + measured);
+        }
+    }
+}
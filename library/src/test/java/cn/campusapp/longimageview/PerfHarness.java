@@ -0,0 +1,175 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.concurrent.Executor;
+
+/**
+ * Replays {@link GestureTrace}s against {@link RegionDecoder} and {@link DecodeScheduler} in simulated
+ * time, and records how much decoding the replay costs.
+ * <p/>
+ * One decode thread is simulated: before each frame it runs queued decodes until their cost, as
+ * charged by {@link SyntheticBackend}, uses up one frame interval, then the frame callback of
+ * {@link DecodeScheduler} is invoked. A frame misses its budget when some part of the viewport
+ * is still not covered by any published tile after that, i.e. the user would see a blank area.
+ */
+class PerfHarness {
+    static final int VIEW_WIDTH = 1080;
+    static final int VIEW_HEIGHT = 1920;
+    static final float REFRESH_RATE = 60F;
+    static final long FRAME_INTERVAL_NANOS = (long) (1000000000L / REFRESH_RATE);
+    /**
+     * Distance between coverage probes in view pixels
+     */
+    private static final int COVERAGE_STEP = 40;
+    final RegionDecoder regionDecoder;
+    final DecodeScheduler scheduler;
+    private final SyntheticBackend mBackend;
+    private final SimulatedExecutor mExecutor = new SimulatedExecutor();
+    private final Rect mRegion = new Rect();
+    private final Metrics mMetrics = new Metrics();
+    private long mNowNanos;
+    /**
+     * Decode time overrunning previous frames
+     */
+    private long mDecodeDebtNanos;
+
+    PerfHarness(@NonNull SyntheticBackend backend, @LongImageView.FitMode int fitMode) throws Exception {
+        // frame callbacks are driven by the harness instead of the looper
+        ShadowLooper.pauseMainLooper();
+        mBackend = backend;
+        regionDecoder = new RegionDecoder(backend);
+        regionDecoder.setFitMode(fitMode);
+        regionDecoder.setDisplayRect(new Rect(0, 0, VIEW_WIDTH, VIEW_HEIGHT));
+        scheduler = new DecodeScheduler(regionDecoder, new DecodeScheduler.Callback() {
+            @Override
+            public void onTilesPublished() {
+            }
+        }, REFRESH_RATE, mExecutor) {
+            @Override
+            long nanoTime() {
+                return mNowNanos;
+            }
+        };
+        scheduler.onRegionChanged();
+    }
+
+    Metrics run(@NonNull GestureTrace trace) {
+        for (GestureTrace.Step step : trace.getSteps()) {
+            step.replay(this);
+        }
+        mMetrics.decodeCount = mBackend.getDecodeCount();
+        mMetrics.decodedPixels = mBackend.getDecodedPixels();
+        return mMetrics;
+    }
+
+    /**
+     * Advance one frame
+     */
+    void frame() {
+        long budget = FRAME_INTERVAL_NANOS - mDecodeDebtNanos;
+        while (budget > 0) {
+            final long cost = mExecutor.runNext(mBackend);
+            if (cost < 0) {
+                break;
+            }
+            budget -= cost;
+        }
+        mDecodeDebtNanos = Math.max(0, -budget);
+
+        mNowNanos += FRAME_INTERVAL_NANOS;
+        scheduler.doFrame(mNowNanos);
+        mMetrics.frames++;
+        if (!isViewportCovered()) {
+            mMetrics.frameMisses++;
+        }
+        mMetrics.peakBitmapBytes = Math.max(mMetrics.peakBitmapBytes, mBackend.getLiveBitmapBytes());
+    }
+
+    private boolean isViewportCovered() {
+        regionDecoder.saveCurrentRegion(mRegion);
+        final Collection<Tile> tiles = scheduler.getPublishedTiles();
+        for (int y = COVERAGE_STEP / 2; y < VIEW_HEIGHT; y += COVERAGE_STEP) {
+            final int imageY = mRegion.top + (int) ((long) y * mRegion.height() / VIEW_HEIGHT);
+            if (imageY < 0 || imageY >= regionDecoder.getImageHeight()) {
+                continue;
+            }
+            for (int x = COVERAGE_STEP / 2; x < VIEW_WIDTH; x += COVERAGE_STEP) {
+                final int imageX = mRegion.left + (int) ((long) x * mRegion.width() / VIEW_WIDTH);
+                if (imageX < 0 || imageX >= regionDecoder.getImageWidth()) {
+                    continue;
+                }
+                if (!isCovered(tiles, imageX, imageY)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCovered(Collection<Tile> tiles, int x, int y) {
+        for (Tile tile : tiles) {
+            if (null != tile.bitmap && tile.intersects(x, y, x + 1, y + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static class Metrics {
+        long frames;
+        long decodeCount;
+        long decodedPixels;
+        long peakBitmapBytes;
+        long frameMisses;
+
+        /**
+         * @return metrics which are checked against baseline, in a stable order
+         */
+        String[] names() {
+            return new String[]{"decodeCount", "decodedPixels", "peakBitmapBytes", "frameMisses"};
+        }
+
+        long[] values() {
+            return new long[]{decodeCount, decodedPixels, peakBitmapBytes, frameMisses};
+        }
+
+        @Override
+        public String toString() {
+            return "Metrics{frames=" + frames + ", decodeCount=" + decodeCount + ", decodedPixels=" + decodedPixels
+                    + ", peakBitmapBytes=" + peakBitmapBytes + ", frameMisses=" + frameMisses + "}";
+        }
+    }
+
+    /**
+     * Queues decode tasks and runs them one by one when the harness asks to
+     */
+    private static class SimulatedExecutor implements Executor {
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mTasks.add(command);
+        }
+
+        /**
+         * Run next task
+         *
+         * @return simulated cost of the task, or -1 if there is no task
+         */
+        long runNext(SyntheticBackend backend) {
+            final Runnable task = mTasks.poll();
+            if (null == task) {
+                return -1;
+            }
+            final long before = backend.getCostNanos();
+            task.run();
+            return backend.getCostNanos() - before;
+        }
+    }
+}
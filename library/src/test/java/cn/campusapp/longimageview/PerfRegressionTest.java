@@ -0,0 +1,61 @@
+package cn.campusapp.longimageview;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Replays gesture traces on synthetic images and fails when decode cost goes past the stored baseline,
+ * see {@link PerfHarness} and {@link PerfBaseline}.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, manifest = Config.NONE)
+public class PerfRegressionTest {
+    private static final int TALL_WIDTH = 1080;
+    private static final int TALL_HEIGHT = 50000;
+
+    private static void replay(GestureTrace trace, SyntheticBackend backend, int fitMode) throws Exception {
+        PerfBaseline.check(trace.getName(), new PerfHarness(backend, fitMode).run(trace));
+    }
+
+    @Test
+    public void tallImage_scrollAndFling() throws Exception {
+        replay(new GestureTrace("tallScroll")
+                        .idle(30)
+                        .scroll(0, -6000, 60)
+                        .idle(30)
+                        .fling(0, -20000, 40)
+                        .idle(60)
+                        .scroll(0, 8000, 60)
+                        .idle(30),
+                new SyntheticBackend(TALL_WIDTH, TALL_HEIGHT), LongImageView.FIT_WIDTH);
+    }
+
+    @Test
+    public void tallImage_pinchAndDoubleTap() throws Exception {
+        replay(new GestureTrace("tallZoom")
+                        .idle(30)
+                        .pinch(1.8F, 30)
+                        .idle(30)
+                        .scroll(0, -3000, 40)
+                        .pinch(0.5F, 30)
+                        .idle(30)
+                        .doubleTap(540, 960, 18)
+                        .idle(30)
+                        .doubleTap(540, 960, 18)
+                        .idle(30),
+                new SyntheticBackend(TALL_WIDTH, TALL_HEIGHT), LongImageView.FIT_WIDTH);
+    }
+
+    @Test
+    public void panorama_scroll() throws Exception {
+        replay(new GestureTrace("panorama")
+                        .idle(30)
+                        .scroll(-8000, 0, 60)
+                        .idle(30)
+                        .fling(-20000, 0, 40)
+                        .idle(60),
+                new SyntheticBackend(40000, 2000), LongImageView.FIT_HEIGHT);
+    }
+}
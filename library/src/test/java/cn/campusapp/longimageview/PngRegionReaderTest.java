@@ -0,0 +1,86 @@
+package cn.campusapp.longimageview;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+
+public class PngRegionReaderTest {
+
+    private static BufferedImage randomImage(int width, int height, int type) {
+        final BufferedImage image = new BufferedImage(width, height, type);
+        final Random random = new Random(width * 31 + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // flat patches and noise, so that the encoder picks different filters
+                image.setRGB(x, y, (x / 8 + y / 8) % 3 == 0 ? 0xFF336699 : random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static PngRegionReader read(BufferedImage image) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return new PngRegionReader(out.toByteArray());
+    }
+
+    private static void assertRegion(BufferedImage image, PngRegionReader reader, int left, int top, int right, int bottom, int sampleSize) throws IOException {
+        final int[] pixels = reader.readRegion(left, top, right, bottom, sampleSize);
+        final int width = PngRegionReader.sampledSize(right - left, sampleSize);
+        final int height = PngRegionReader.sampledSize(bottom - top, sampleSize);
+        assertEquals(width * height, pixels.length);
+        final boolean gray = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int ix = left + x * sampleSize;
+                final int iy = top + y * sampleSize;
+                // getRGB of gray images applies a color space conversion, compare raw samples instead
+                final int expected = gray
+                        ? 0xFF000000 | image.getRaster().getSample(ix, iy, 0) * 0x010101
+                        : image.getRGB(ix, iy);
+                assertEquals("pixel " + ix + "," + iy, expected, pixels[y * width + x]);
+            }
+        }
+    }
+
+    @Test
+    public void rgb_regionsAndSampleSizes() throws IOException {
+        final BufferedImage image = randomImage(203, 517, BufferedImage.TYPE_INT_RGB);
+        final PngRegionReader reader = read(image);
+        assertEquals(203, reader.getWidth());
+        assertEquals(517, reader.getHeight());
+        assertRegion(image, reader, 0, 0, 203, 517, 1);
+        assertRegion(image, reader, 17, 300, 150, 517, 1);
+        assertRegion(image, reader, 0, 256, 203, 512, 4);
+    }
+
+    @Test
+    public void rgba_keepsAlpha() throws IOException {
+        final BufferedImage image = randomImage(64, 80, BufferedImage.TYPE_INT_ARGB);
+        final PngRegionReader reader = read(image);
+        assertEquals(true, reader.hasAlpha());
+        assertRegion(image, reader, 5, 7, 60, 79, 2);
+    }
+
+    @Test
+    public void grayPaletteAndBinary() throws IOException {
+        for (int type : new int[]{BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_BYTE_INDEXED, BufferedImage.TYPE_BYTE_BINARY}) {
+            final BufferedImage image = randomImage(77, 45, type);
+            final PngRegionReader reader = read(image);
+            assertRegion(image, reader, 0, 0, 77, 45, 1);
+            assertRegion(image, reader, 3, 10, 71, 40, 2);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void notPng_throws() throws IOException {
+        new PngRegionReader(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 0, 0, 0, 0, 0, 0});
+    }
+}
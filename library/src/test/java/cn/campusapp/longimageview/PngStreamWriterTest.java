@@ -0,0 +1,75 @@
+package cn.campusapp.longimageview;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+
+public class PngStreamWriterTest {
+
+    private static int[] randomPixels(int count, boolean alpha) {
+        final Random random = new Random(count);
+        final int[] pixels = new int[count];
+        for (int i = 0; i < count; i++) {
+            pixels[i] = alpha ? random.nextInt() : 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+
+    private static BufferedImage encodeInStrips(int[] pixels, int width, int height, int stripRows, boolean alpha) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final PngStreamWriter writer = new PngStreamWriter(out, width, height, alpha);
+        final int[] strip = new int[width * stripRows];
+        for (int row = 0; row < height; row += stripRows) {
+            final int rows = Math.min(stripRows, height - row);
+            System.arraycopy(pixels, row * width, strip, 0, rows * width);
+            writer.writeRows(strip, width, rows);
+        }
+        writer.finish();
+        return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void rgb_roundTrip() throws IOException {
+        final int width = 300;
+        final int height = 257;
+        final int[] pixels = randomPixels(width * height, false);
+        final BufferedImage image = encodeInStrips(pixels, width, height, 64, false);
+
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(pixels[y * width + x], image.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void rgba_roundTrip() throws IOException {
+        final int width = 97;
+        final int height = 31;
+        final int[] pixels = randomPixels(width * height, true);
+        final BufferedImage image = encodeInStrips(pixels, width, height, 1, true);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(pixels[y * width + x], image.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingRows_throws() throws IOException {
+        final PngStreamWriter writer = new PngStreamWriter(new ByteArrayOutputStream(), 10, 10, false);
+        writer.writeRows(new int[100], 10, 5);
+        writer.finish();
+    }
+}
@@ -0,0 +1,56 @@
+package cn.campusapp.longimageview;
+
+import org.junit.Test;
+
+import static cn.campusapp.longimageview.QualityController.LEVEL_FULL;
+import static cn.campusapp.longimageview.QualityController.LEVEL_LOW;
+import static cn.campusapp.longimageview.QualityController.LEVEL_REDUCED;
+import static cn.campusapp.longimageview.QualityController.computeLevel;
+import static org.junit.Assert.assertEquals;
+
+public class QualityControllerTest {
+    private static final int COOL = 300;
+    private static final float FAST = 50F;
+
+    @Test
+    public void calmDevice_fullQuality() {
+        assertEquals(LEVEL_FULL, computeLevel(LEVEL_FULL, false, COOL, FAST));
+    }
+
+    @Test
+    public void powerSave_reducesQuality() {
+        assertEquals(LEVEL_REDUCED, computeLevel(LEVEL_FULL, true, COOL, FAST));
+    }
+
+    @Test
+    public void worstSignalWins() {
+        assertEquals(LEVEL_LOW, computeLevel(LEVEL_FULL, true, QualityController.TEMPERATURE_LOW, FAST));
+        assertEquals(LEVEL_LOW, computeLevel(LEVEL_FULL, false, COOL, QualityController.LATENCY_LOW));
+    }
+
+    @Test
+    public void temperature_hysteresis() {
+        final int warm = QualityController.TEMPERATURE_REDUCED - QualityController.TEMPERATURE_HYSTERESIS / 2;
+        // not warm enough to reduce quality, but not cool enough to restore it either
+        assertEquals(LEVEL_FULL, computeLevel(LEVEL_FULL, false, warm, FAST));
+        assertEquals(LEVEL_REDUCED, computeLevel(LEVEL_REDUCED, false, warm, FAST));
+        assertEquals(LEVEL_FULL, computeLevel(LEVEL_REDUCED, false, COOL, FAST));
+    }
+
+    @Test
+    public void latency_hysteresis() {
+        final float slowish = QualityController.LATENCY_LOW - QualityController.LATENCY_HYSTERESIS / 2;
+        assertEquals(LEVEL_REDUCED, computeLevel(LEVEL_REDUCED, false, COOL, slowish));
+        assertEquals(LEVEL_LOW, computeLevel(LEVEL_LOW, false, COOL, slowish));
+    }
+
+    @Test
+    public void latency_normalizedByImageArea() {
+        final long tile = 256 * 256;
+        final float full = QualityController.normalizeLatency(50000000L, tile);
+        // twice the sample size covers 4 times the image in about the same time, which is fast
+        final float doubled = QualityController.normalizeLatency(50000000L, tile * 4);
+        assertEquals(LEVEL_LOW, computeLevel(LEVEL_REDUCED, false, COOL, full));
+        assertEquals(LEVEL_FULL, computeLevel(LEVEL_LOW, false, COOL, doubled));
+    }
+}
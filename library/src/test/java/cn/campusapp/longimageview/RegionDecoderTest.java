@@ -0,0 +1,48 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, manifest = Config.NONE)
+public class RegionDecoderTest {
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 1920;
+
+    private static RegionDecoder fitInside(int width, int height) throws Exception {
+        return fit(LongImageView.FIT_INSIDE, width, height);
+    }
+
+    private static RegionDecoder fit(@LongImageView.FitMode int fitMode, int width, int height) throws Exception {
+        final RegionDecoder regionDecoder = new RegionDecoder(new SyntheticBackend(width, height));
+        regionDecoder.setFitMode(fitMode);
+        regionDecoder.setDisplayRect(new Rect(0, 0, VIEW_WIDTH, VIEW_HEIGHT));
+        return regionDecoder;
+    }
+
+    @Test
+    public void fitInside_largeImageZoomsToFullResolution() throws Exception {
+        final RegionDecoder regionDecoder = fitInside(20000, 20000);
+        assertEquals(20000F / VIEW_WIDTH, regionDecoder.getMaxScale(), 0.01F);
+        assertEquals(1, regionDecoder.getSampleSize(regionDecoder.getMaxScale()));
+    }
+
+    @Test
+    public void fitInside_smallImageZoomsUntilFilled() throws Exception {
+        final RegionDecoder regionDecoder = fitInside(500, 500);
+        assertEquals((float) VIEW_HEIGHT / VIEW_WIDTH, regionDecoder.getMaxScale(), 0.01F);
+    }
+
+    @Test
+    public void fitWidth_keepsMaxScaleFactor() throws Exception {
+        // zooming a wide source in to full resolution would take 3.7x, which FIT_WIDTH does not allow
+        final RegionDecoder regionDecoder = fit(LongImageView.FIT_WIDTH, 4000, 20000);
+        assertEquals(2F, regionDecoder.getMaxScale(), 0.01F);
+    }
+}
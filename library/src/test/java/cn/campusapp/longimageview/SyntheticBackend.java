@@ -0,0 +1,96 @@
+package cn.campusapp.longimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link DecoderBackend} for an image which only exists by its size.
+ * <p/>
+ * Every decode produces a blank bitmap of the right size and is charged a simulated cost, which
+ * roughly follows {@link android.graphics.BitmapRegionDecoder} on a mid-range device: a fixed cost
+ * per call, plus a cost per source pixel and per decoded pixel.
+ */
+class SyntheticBackend implements DecoderBackend {
+    static final long NANOS_PER_DECODE = 1000000L;
+    static final long NANOS_PER_SOURCE_PIXEL = 10L;
+    static final long NANOS_PER_DECODED_PIXEL = 40L;
+    private static final int BYTES_PER_PIXEL = 2; // RGB_565
+    private final int mWidth;
+    private final int mHeight;
+    private final List<Bitmap> mBitmaps = new ArrayList<>();
+    private long mDecodeCount;
+    private long mDecodedPixels;
+    private long mCostNanos;
+
+    SyntheticBackend(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public int getCapabilities() {
+        return CAPABILITY_REGION;
+    }
+
+    @Override
+    public synchronized Bitmap decodeRegion(@NonNull Rect rect, @NonNull BitmapFactory.Options options) {
+        final int sampleSize = Math.max(1, options.inSampleSize);
+        final int width = (rect.width() + sampleSize - 1) / sampleSize;
+        final int height = (rect.height() + sampleSize - 1) / sampleSize;
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        mBitmaps.add(bitmap);
+        mDecodeCount++;
+        mDecodedPixels += (long) width * height;
+        mCostNanos += NANOS_PER_DECODE
+                + NANOS_PER_SOURCE_PIXEL * rect.width() * rect.height()
+                + NANOS_PER_DECODED_PIXEL * width * height;
+        return bitmap;
+    }
+
+    @Override
+    public void recycle() {
+    }
+
+    synchronized long getDecodeCount() {
+        return mDecodeCount;
+    }
+
+    synchronized long getDecodedPixels() {
+        return mDecodedPixels;
+    }
+
+    /**
+     * @return simulated time spent on decoding so far
+     */
+    synchronized long getCostNanos() {
+        return mCostNanos;
+    }
+
+    /**
+     * @return bytes of decoded bitmaps which are not recycled yet
+     */
+    synchronized long getLiveBitmapBytes() {
+        long bytes = 0;
+        for (Bitmap bitmap : mBitmaps) {
+            if (!bitmap.isRecycled()) {
+                bytes += (long) bitmap.getWidth() * bitmap.getHeight() * BYTES_PER_PIXEL;
+            }
+        }
+        return bytes;
+    }
+}
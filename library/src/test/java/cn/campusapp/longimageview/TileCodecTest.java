@@ -0,0 +1,75 @@
+package cn.campusapp.longimageview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TileCodecTest {
+    private static final int COUNT = 256 * 256;
+
+    private static byte[] encode(short[] pixels) {
+        final byte[] out = new byte[TileCodec.maxEncodedSize(pixels.length)];
+        final int length = TileCodec.encode(pixels, pixels.length, out);
+        return Arrays.copyOf(out, length);
+    }
+
+    private static void assertRoundTrip(short[] pixels, byte[] encoded) {
+        final short[] decoded = new short[pixels.length];
+        assertEquals(pixels.length, TileCodec.decode(encoded, encoded.length, decoded));
+        assertTrue(Arrays.equals(pixels, decoded));
+    }
+
+    @Test
+    public void flatTileShrinksToFewRuns() {
+        final short[] pixels = new short[COUNT];
+        Arrays.fill(pixels, (short) 0xFFFF);
+        final byte[] encoded = encode(pixels);
+        assertTrue("encoded " + encoded.length + " bytes", encoded.length < 32);
+        assertRoundTrip(pixels, encoded);
+    }
+
+    @Test
+    public void noisyTileIsStoredRaw() {
+        final short[] pixels = new short[COUNT];
+        final Random random = new Random(1);
+        for (int i = 0; i < COUNT; i++) {
+            pixels[i] = (short) random.nextInt();
+        }
+        final byte[] encoded = encode(pixels);
+        assertEquals(1 + COUNT * 2, encoded.length);
+        assertRoundTrip(pixels, encoded);
+    }
+
+    @Test
+    public void textLikeTileRoundTrips() {
+        final short[] pixels = new short[COUNT];
+        final Random random = new Random(2);
+        Arrays.fill(pixels, (short) 0xFFFF);
+        // short strokes of a few colors on white, with runs of every length around the threshold
+        for (int i = 0; i < COUNT; i += 7 + random.nextInt(40)) {
+            final int length = 1 + random.nextInt(5);
+            for (int j = i; j < Math.min(COUNT, i + length); j++) {
+                pixels[j] = (short) (random.nextBoolean() ? 0 : random.nextInt());
+            }
+        }
+        final byte[] encoded = encode(pixels);
+        assertTrue("encoded " + encoded.length + " bytes", encoded.length < COUNT);
+        assertRoundTrip(pixels, encoded);
+    }
+
+    @Test
+    public void alternatingShortRunsNeverExceedBound() {
+        // pattern which costs most control words: runs of exactly the minimum length between single pixels
+        final short[] pixels = new short[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            pixels[i] = (short) (i % 4 == 3 ? i : 0x1234);
+        }
+        final byte[] encoded = encode(pixels);
+        assertTrue(encoded.length <= 1 + COUNT * 2);
+        assertRoundTrip(pixels, encoded);
+    }
+}
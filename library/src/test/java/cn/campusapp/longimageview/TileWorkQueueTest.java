@@ -0,0 +1,148 @@
+package cn.campusapp.longimageview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TileWorkQueueTest {
+    private static final int TILE = 256;
+
+    private static Tile tile(int sampleSize, int col, int row) {
+        final int size = TILE * sampleSize;
+        return new Tile(sampleSize, col, row, col * size, row * size, (col + 1) * size, (row + 1) * size);
+    }
+
+    private static Tile speculative(int sampleSize, int col, int row) {
+        final Tile tile = tile(sampleSize, col, row);
+        tile.speculative = true;
+        return tile;
+    }
+
+    @Test
+    public void emptyQueue_pollsNull() {
+        assertNull(new TileWorkQueue().poll());
+    }
+
+    @Test
+    public void nearTilesFirst() {
+        final TileWorkQueue queue = new TileWorkQueue();
+        for (int row = 0; row < 10; row++) {
+            queue.add(tile(1, 0, row));
+        }
+        queue.setFocus(TILE / 2, TILE * 6 + TILE / 2);
+
+        final List<Tile> decoded = new FakeDecoder(queue).drain(Integer.MAX_VALUE);
+        assertEquals(6, decoded.get(0).row);
+        assertEquals(1, Math.abs(decoded.get(1).row - 6));
+        assertEquals(1, Math.abs(decoded.get(2).row - 6));
+        assertEquals(0, decoded.get(decoded.size() - 1).row);
+    }
+
+    @Test
+    public void coarseTilesFirst() {
+        final TileWorkQueue queue = new TileWorkQueue();
+        queue.add(tile(1, 0, 0));
+        queue.add(tile(4, 0, 0));
+        queue.add(tile(2, 0, 0));
+        queue.setFocus(TILE / 2, TILE / 2);
+
+        final List<Tile> decoded = new FakeDecoder(queue).drain(Integer.MAX_VALUE);
+        assertEquals(4, decoded.get(0).sampleSize);
+        assertEquals(2, decoded.get(1).sampleSize);
+        assertEquals(1, decoded.get(2).sampleSize);
+    }
+
+    @Test
+    public void visibleTilesBeforeSpeculative() {
+        final TileWorkQueue queue = new TileWorkQueue();
+        queue.add(speculative(4, 0, 0));
+        queue.add(tile(1, 0, 5));
+        queue.setFocus(TILE / 2, TILE / 2);
+
+        final List<Tile> decoded = new FakeDecoder(queue).drain(Integer.MAX_VALUE);
+        assertTrue(!decoded.get(0).speculative);
+        assertTrue(decoded.get(1).speculative);
+    }
+
+    @Test
+    public void refocus_reprioritizesQueuedTiles() {
+        final TileWorkQueue queue = new TileWorkQueue();
+        for (int row = 0; row < 20; row++) {
+            queue.add(tile(1, 0, row));
+        }
+        queue.setFocus(TILE / 2, TILE / 2);
+        final FakeDecoder decoder = new FakeDecoder(queue);
+        final List<Tile> head = decoder.drain(3);
+        assertEquals(0, head.get(0).row);
+        assertEquals(1, head.get(1).row);
+        assertEquals(2, head.get(2).row);
+
+        // user scrolls to the bottom while tiles are being decoded
+        queue.setFocus(TILE / 2, TILE * 19 + TILE / 2);
+        final List<Tile> tail = decoder.drain(3);
+        assertEquals(19, tail.get(0).row);
+        assertEquals(18, tail.get(1).row);
+        assertEquals(17, tail.get(2).row);
+        assertEquals(14, queue.size());
+    }
+
+    @Test
+    public void focus_survivesNegativeCoordinates() {
+        final TileWorkQueue queue = new TileWorkQueue();
+        queue.setFocus(-100, -200);
+        assertEquals(-100, queue.getFocusX());
+        assertEquals(-200, queue.getFocusY());
+    }
+
+    @Test
+    public void concurrentRefocus_decodesEveryTileOnce() throws Exception {
+        final TileWorkQueue queue = new TileWorkQueue();
+        final int count = 2000;
+        for (int row = 0; row < count; row++) {
+            queue.add(tile(1, 0, row));
+        }
+        final Thread scroller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int y = 0; y < count * TILE; y += TILE / 4) {
+                    queue.setFocus(0, y);
+                }
+            }
+        });
+        scroller.start();
+        final List<Tile> decoded = new FakeDecoder(queue).drain(Integer.MAX_VALUE);
+        scroller.join();
+
+        assertEquals(count, decoded.size());
+        final boolean[] seen = new boolean[count];
+        for (Tile tile : decoded) {
+            assertTrue(!seen[tile.row]);
+            seen[tile.row] = true;
+        }
+    }
+
+    /**
+     * Stands in for {@link RegionDecoder#decodeTile(Tile)}, records the order tiles are decoded in
+     */
+    private static class FakeDecoder {
+        private final TileWorkQueue mQueue;
+
+        FakeDecoder(TileWorkQueue queue) {
+            mQueue = queue;
+        }
+
+        List<Tile> drain(int max) {
+            final List<Tile> decoded = new ArrayList<>();
+            Tile tile;
+            while (decoded.size() < max && null != (tile = mQueue.poll())) {
+                decoded.add(tile);
+            }
+            return decoded;
+        }
+    }
+}